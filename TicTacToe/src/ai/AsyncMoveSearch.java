@@ -0,0 +1,97 @@
+package ai;
+
+import game.Board;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs a {@link SearchEngine}'s search on a background thread so the caller,
+ * such as the JavaFX application thread, is never blocked by it. Each search
+ * gives the best move found at every depth as it completes and its final move
+ * through a CompletableFuture, cancelling the future stops the search at the
+ * next node it visits if the engine can stop early.
+ * <p>
+ * Searches run one at a time on a single daemon thread as an engine must only
+ * be used by one thread at a time.
+ *
+ * @author DavidHurst
+ */
+public class AsyncMoveSearch {
+
+    private final SearchEngine engine;
+    private final ExecutorService executor
+            = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ai-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * @param engine Engine to search with, owned by this searcher from now on
+     */
+    public AsyncMoveSearch(SearchEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Start searching a copy of the board for the best move, the board can be
+     * changed once this returns.
+     * @param board Board to evaluate
+     * @param onUpdate Given the best move found by each depth of the search,
+     * called on the search thread
+     * @return Future completed with the coordinates of the best move,
+     * cancelling it stops the search
+     */
+    public CompletableFuture<int[]> getBestMove(Board board,
+            Consumer<int[]> onUpdate) {
+        Board copy = new Board(board);
+        CompletableFuture<int[]> result = new CompletableFuture<>();
+        result.whenComplete((move, error) -> {
+            if (error instanceof CancellationException) {
+                engine.stop();
+            }
+        });
+        executor.execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                SearchResult found = engine.search(copy, move -> {
+                    if (!result.isDone()) {
+                        onUpdate.accept(move);
+                    }
+                });
+                result.complete(found.getMove());
+            } catch (SearchContext.StoppedException e) {
+                // Only a cancelled search is stopped before its first depth.
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Start searching a copy of the board for the best move.
+     * @param board Board to evaluate
+     * @return Future completed with the coordinates of the best move,
+     * cancelling it stops the search
+     */
+    public CompletableFuture<int[]> getBestMove(Board board) {
+        return getBestMove(board, move -> {
+        });
+    }
+
+    /**
+     * Stop the search thread and the engine, the searcher cannot be used
+     * afterwards.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        engine.shutdown();
+    }
+}
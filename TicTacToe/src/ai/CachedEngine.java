@@ -0,0 +1,114 @@
+package ai;
+
+import game.Board;
+import game.Position;
+import game.Symmetry;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * An engine which looks each position up in a {@link MoveCache} before
+ * searching it, and caches the moves of the searches which complete. Boards
+ * of over 64 tiles, which a {@link Position} cannot hold, are always
+ * searched.
+ *
+ * @author DavidHurst
+ */
+final class CachedEngine implements SearchEngine {
+
+    private final SearchEngine engine;
+    private final String key;
+    private final MoveCache cache;
+
+    /**
+     * @param engine Engine to search positions missing from the cache
+     * @param settings Settings the engine was created with, positions are
+     * only shared between engines of the same name and settings
+     * @param cache Cache to look moves up in
+     */
+    CachedEngine(SearchEngine engine, EngineSettings settings,
+            MoveCache cache) {
+        this.engine = engine;
+        key = engine.getName() + " " + settings;
+        this.cache = cache;
+    }
+
+    @Override
+    public String getName() {
+        return engine.getName();
+    }
+
+    @Override
+    public SearchResult search(Board board) {
+        return search(board, move -> {
+        });
+    }
+
+    @Override
+    public SearchResult search(Board board, Consumer<int[]> onProgress) {
+        if (board.getWidth() * board.getHeight() > Long.SIZE) {
+            return engine.search(board, onProgress);
+        }
+        Position position = Position.of(board);
+        return search(position, () -> engine.search(board, onProgress));
+    }
+
+    @Override
+    public SearchResult search(Position position) {
+        return search(position, () -> engine.search(position));
+    }
+
+    @Override
+    public SearchResult search(Position position,
+            BooleanSupplier stopRequested) {
+        return search(position,
+                () -> engine.search(position, stopRequested));
+    }
+
+    private SearchResult search(Position position,
+            Supplier<SearchResult> searcher) {
+        long start = System.nanoTime();
+        int transform = position.getCanonicalTransform();
+        Position canonical = position.transform(transform);
+        Symmetry symmetry = Symmetry.of(position.getWidth(),
+                position.getHeight());
+        int width = position.getWidth();
+        Long cached = cache.get(key, canonical);
+        if (cached != null) {
+            int tile = symmetry.transformTile(symmetry.inverse(transform),
+                    (int) (cached >> 32));
+            SearchStats stats = new SearchStats(0, 0, 0, 0, new long[0], 0,
+                    0, 0, System.nanoTime() - start);
+            return new SearchResult(new int[]{tile / width, tile % width},
+                    (int) (long) cached, stats);
+        }
+        SearchResult result = searcher.get();
+        int[] move = result.getMove();
+        // A search cut short found a shallower move than a full one would.
+        if (move[0] >= 0 && result.isComplete()) {
+            cache.put(key, canonical, symmetry.transformTile(transform,
+                    move[0] * width + move[1]), result.getScore());
+        }
+        return result;
+    }
+
+    @Override
+    public void stop() {
+        engine.stop();
+    }
+
+    /**
+     * Clears the engine but not the cache, which other engines share.
+     */
+    @Override
+    public void clear() {
+        engine.clear();
+    }
+
+    @Override
+    public void shutdown() {
+        engine.shutdown();
+    }
+}
@@ -0,0 +1,125 @@
+package ai;
+
+import ai.TranspositionTable.ReplacementPolicy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Creates search engines by name, so the game, SelfPlay and the benchmarks
+ * can be given any engine on the command line. Every engine in the ai package
+ * is registered, others can be added with
+ * {@link #register(String, Function)}.
+ * <p>
+ * Each engine created owns its transposition table and threads, so engines
+ * created with different settings do not affect each other, apart from
+ * tablebases and opening books which are shared by every MiniMaxCombined.
+ *
+ * @author DavidHurst
+ */
+public final class EngineRegistry {
+
+    /**
+     * Time allowed for each Monte Carlo search if no budget is set.
+     */
+    private static final long DEFAULT_MCTS_MILLIS = 1000;
+
+    private static final Map<String, Function<EngineSettings, SearchEngine>>
+            FACTORIES = new LinkedHashMap<>();
+
+    static {
+        register("MiniMax", settings -> new StaticEngine("MiniMax",
+                settings.maxDepthOr(MiniMax.MAX_DEPTH), MiniMax::searchRoot));
+        register("MiniMaxImproved", settings -> new StaticEngine(
+                "MiniMaxImproved",
+                settings.maxDepthOr(MiniMaxImproved.MAX_DEPTH),
+                MiniMaxImproved::searchRoot));
+        register("MiniMaxAlphaBeta", settings -> new StaticEngine(
+                "MiniMaxAlphaBeta",
+                settings.maxDepthOr(MiniMaxAlphaBeta.MAX_DEPTH),
+                MiniMaxAlphaBeta::searchRoot));
+        register("MiniMaxCombined", MiniMaxCombinedEngine::new);
+        register("MiniMaxPvs", MiniMaxPvsEngine::new);
+        register("MiniMaxParallel", settings -> new MiniMaxParallel(
+                settings.getThreads(), newTable(settings),
+                settings.maxDepthOr(MiniMaxCombined.MAX_DEPTH), settings));
+        register("MiniMaxLazySmp", settings -> new MiniMaxLazySmp(
+                settings.getThreads(), newTable(settings),
+                settings.maxDepthOr(MiniMaxCombined.MAX_DEPTH), settings));
+        register("MonteCarloTreeSearch", settings -> {
+            long millis = settings.getTimeBudgetMillis();
+            if (millis == 0 && settings.getPlayoutBudget() == 0) {
+                millis = DEFAULT_MCTS_MILLIS;
+            }
+            return new MonteCarloTreeSearch(settings.getThreads(), millis,
+                    settings.getPlayoutBudget());
+        });
+    }
+
+    private EngineRegistry() {
+    }
+
+    private static TranspositionTable newTable(EngineSettings settings) {
+        return new TranspositionTable(
+                settings.tableBytesOr(MiniMaxCombined.DEFAULT_TABLE_BYTES),
+                ReplacementPolicy.DEPTH_PREFERRED);
+    }
+
+    /**
+     * Add an engine, or replace the one registered under the name.
+     * @param name Name to create the engine by
+     * @param factory Creates a new engine from its settings
+     */
+    public static synchronized void register(String name,
+            Function<EngineSettings, SearchEngine> factory) {
+        FACTORIES.put(name, factory);
+    }
+
+    /**
+     * @param name Name the engine is registered under
+     * @param settings How the engine searches
+     * @return A new engine
+     * @throws IllegalArgumentException If no engine has the name
+     */
+    public static synchronized SearchEngine create(String name,
+            EngineSettings settings) {
+        Function<EngineSettings, SearchEngine> factory = FACTORIES.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown engine " + name
+                    + ", expected one of " + FACTORIES.keySet());
+        }
+        return factory.apply(settings);
+    }
+
+    /**
+     * @param name Name the engine is registered under
+     * @param settings How the engine searches
+     * @param cache Cache of moves shared with other engines, looked up before
+     * each search and given the move of each search made
+     * @return A new engine in front of the cache
+     * @throws IllegalArgumentException If no engine has the name
+     */
+    public static SearchEngine create(String name, EngineSettings settings,
+            MoveCache cache) {
+        return new CachedEngine(create(name, settings), settings, cache);
+    }
+
+    /**
+     * @param name Name the engine is registered under
+     * @return A new engine with the default settings
+     * @throws IllegalArgumentException If no engine has the name
+     */
+    public static SearchEngine create(String name) {
+        return create(name, EngineSettings.DEFAULTS);
+    }
+
+    /**
+     * @return Names of the registered engines in the order they were added
+     */
+    public static synchronized List<String> getNames() {
+        return new ArrayList<>(FACTORIES.keySet());
+    }
+}
@@ -0,0 +1,214 @@
+package ai;
+
+/**
+ * How an engine created by {@link EngineRegistry} searches. Settings are
+ * immutable, each {@code with} method returns a copy with one setting
+ * changed. An engine ignores the settings which do not apply to it and a
+ * setting of 0 leaves the engine's default in place. The search options of
+ * the minimax engines, move ordering, the history heuristic and line
+ * potential, belong to each engine, and the static methods of
+ * MiniMaxCombined and MiniMaxPvs each take theirs from the class's
+ * {@code setSearchOptions}.
+ *
+ * @author DavidHurst
+ */
+public final class EngineSettings {
+
+    /**
+     * Every engine's defaults, searching on one thread.
+     */
+    public static final EngineSettings DEFAULTS = new EngineSettings();
+
+    // Only set on a new copy before a with method returns it.
+    private int maxDepth;
+    private long timeBudgetMillis;
+    private int threads = 1;
+    private long tableBytes;
+    private long playoutBudget;
+    private boolean moveOrdering = true;
+    private boolean historyHeuristic;
+    private boolean linePotential = true;
+
+    private EngineSettings() {
+    }
+
+    /**
+     * @return A copy of these settings for a with method to change
+     */
+    private EngineSettings copy() {
+        EngineSettings copy = new EngineSettings();
+        copy.maxDepth = maxDepth;
+        copy.timeBudgetMillis = timeBudgetMillis;
+        copy.threads = threads;
+        copy.tableBytes = tableBytes;
+        copy.playoutBudget = playoutBudget;
+        copy.moveOrdering = moveOrdering;
+        copy.historyHeuristic = historyHeuristic;
+        copy.linePotential = linePotential;
+        return copy;
+    }
+
+    private static void checkNotNegative(long setting) {
+        if (setting < 0) {
+            throw new IllegalArgumentException("Invalid engine settings");
+        }
+    }
+
+    /**
+     * @param maxDepth Depth of the game tree below each root move to search
+     * to, in place of the engine's MAX_DEPTH
+     * @return Copy of these settings with the given depth
+     */
+    public EngineSettings withMaxDepth(int maxDepth) {
+        checkNotNegative(maxDepth);
+        EngineSettings copy = copy();
+        copy.maxDepth = maxDepth;
+        return copy;
+    }
+
+    /**
+     * @param timeBudgetMillis Time allowed for each search in milliseconds,
+     * engines which support it deepen their search until it runs out
+     * @return Copy of these settings with the given time budget
+     */
+    public EngineSettings withTimeBudget(long timeBudgetMillis) {
+        checkNotNegative(timeBudgetMillis);
+        EngineSettings copy = copy();
+        copy.timeBudgetMillis = timeBudgetMillis;
+        return copy;
+    }
+
+    /**
+     * @param threads Number of threads each search runs on
+     * @return Copy of these settings with the given number of threads
+     */
+    public EngineSettings withThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid engine settings");
+        }
+        EngineSettings copy = copy();
+        copy.threads = threads;
+        return copy;
+    }
+
+    /**
+     * @param tableBytes Memory budget of the engine's transposition table
+     * @return Copy of these settings with the given table size
+     */
+    public EngineSettings withTableBytes(long tableBytes) {
+        checkNotNegative(tableBytes);
+        EngineSettings copy = copy();
+        copy.tableBytes = tableBytes;
+        return copy;
+    }
+
+    /**
+     * @param playoutBudget Random games MonteCarloTreeSearch plays each search
+     * @return Copy of these settings with the given playout budget
+     */
+    public EngineSettings withPlayoutBudget(long playoutBudget) {
+        checkNotNegative(playoutBudget);
+        EngineSettings copy = copy();
+        copy.playoutBudget = playoutBudget;
+        return copy;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @param defaultDepth The engine's own maximum depth
+     * @return The maximum depth set or the default if none is
+     */
+    int maxDepthOr(int defaultDepth) {
+        return maxDepth > 0 ? maxDepth : defaultDepth;
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getTableBytes() {
+        return tableBytes;
+    }
+
+    /**
+     * @param defaultBytes The engine's own table size
+     * @return The table size set or the default if none is
+     */
+    long tableBytesOr(long defaultBytes) {
+        return tableBytes > 0 ? tableBytes : defaultBytes;
+    }
+
+    public long getPlayoutBudget() {
+        return playoutBudget;
+    }
+
+    /**
+     * @param moveOrdering Whether the minimax engines order moves, without
+     * it moves are searched in row-major order
+     * @return Copy of these settings with move ordering on or off
+     */
+    public EngineSettings withMoveOrdering(boolean moveOrdering) {
+        EngineSettings copy = copy();
+        copy.moveOrdering = moveOrdering;
+        return copy;
+    }
+
+    /**
+     * @param historyHeuristic Whether move ordering breaks ties between moves
+     * by their history
+     * @return Copy of these settings with the history heuristic on or off
+     */
+    public EngineSettings withHistoryHeuristic(boolean historyHeuristic) {
+        EngineSettings copy = copy();
+        copy.historyHeuristic = historyHeuristic;
+        return copy;
+    }
+
+    /**
+     * @param linePotential Whether the minimax engines value positions at
+     * their maximum depth by their open lines rather than as a draw
+     * @return Copy of these settings with line potential on or off
+     */
+    public EngineSettings withLinePotential(boolean linePotential) {
+        EngineSettings copy = copy();
+        copy.linePotential = linePotential;
+        return copy;
+    }
+
+    public boolean isMoveOrdering() {
+        return moveOrdering;
+    }
+
+    public boolean isHistoryHeuristic() {
+        return historyHeuristic;
+    }
+
+    public boolean isLinePotential() {
+        return linePotential;
+    }
+
+    /**
+     * @param table Transposition table of the search
+     * @return State of a new search with these settings' search options
+     */
+    SearchContext newContext(TranspositionTable table) {
+        return new SearchContext(table, moveOrdering
+                ? new MoveOrdering(historyHeuristic) : null, linePotential);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EngineSettings[maxDepth=%d, timeBudget=%d ms, "
+                + "threads=%d, tableBytes=%d, playoutBudget=%d, "
+                + "moveOrdering=%b, historyHeuristic=%b, linePotential=%b]",
+                maxDepth, timeBudgetMillis, threads, tableBytes, playoutBudget,
+                moveOrdering, historyHeuristic, linePotential);
+    }
+}
@@ -1,6 +1,8 @@
 package ai;
 
 import game.Board;
+import game.Mark;
+import game.Symmetry;
 
 import static game.Mark.*;
 
@@ -11,7 +13,7 @@ import static game.Mark.*;
  */
 public class MiniMax {
 
-    private static final int MAX_DEPTH = 6;
+    static final int MAX_DEPTH = 6;
 
     private MiniMax() {
     }
@@ -38,13 +40,13 @@ public class MiniMax {
         // Maximising player, find the maximum attainable value.
         if (isMax) {
             int highestVal = Integer.MIN_VALUE;
-            for (int row = 0; row < board.getWidth(); row++) {
+            for (int row = 0; row < board.getHeight(); row++) {
                 for (int col = 0; col < board.getWidth(); col++) {
                     if (!board.isTileMarked(row, col)) {
-                        board.setMarkAt(row, col, X);
+                        board.makeMove(row, col, X);
                         highestVal = Math.max(highestVal, miniMax(board,
                                 depth - 1, false));
-                        board.setMarkAt(row, col, BLANK);
+                        board.unmakeMove();
                     }
                 }
             }
@@ -52,13 +54,13 @@ public class MiniMax {
             // Minimising player, find the minimum attainable value;
         } else {
             int lowestVal = Integer.MAX_VALUE;
-            for (int row = 0; row < board.getWidth(); row++) {
+            for (int row = 0; row < board.getHeight(); row++) {
                 for (int col = 0; col < board.getWidth(); col++) {
                     if (!board.isTileMarked(row, col)) {
-                        board.setMarkAt(row, col, O);
+                        board.makeMove(row, col, O);
                         lowestVal = Math.min(lowestVal, miniMax(board,
                                 depth - 1, true));
-                        board.setMarkAt(row, col, BLANK);
+                        board.unmakeMove();
                     }
                 }
             }
@@ -72,18 +74,35 @@ public class MiniMax {
      * @return Coordinates of best move
      */
     public static int[] getBestMove(Board board) {
-        int[] bestMove = new int[]{-1, -1};
+        int[] found = searchRoot(board, MAX_DEPTH);
+        return new int[]{found[0], found[1]};
+    }
+
+    /**
+     * Evaluate every legal move on the board to the given depth.
+     * @param board Board to evaluate
+     * @param depth The maximum depth of the game tree to search to
+     * @return Row and column of the best move followed by its value
+     */
+    static int[] searchRoot(Board board, int depth) {
+        int[] bestMove = new int[]{-1, -1, 0};
         int bestValue = Integer.MIN_VALUE;
+        // Moves equivalent by symmetry to an earlier one have the same value.
+        Symmetry symmetry = board.getSymmetry();
+        int[] stabilisers = symmetry.stabilisers(board);
 
-        for (int row = 0; row < board.getWidth(); row++) {
+        for (int row = 0; row < board.getHeight(); row++) {
             for (int col = 0; col < board.getWidth(); col++) {
-                if (!board.isTileMarked(row, col)) {
-                    board.setMarkAt(row, col, X);
-                    int moveValue = miniMax(board, MAX_DEPTH, false);
-                    board.setMarkAt(row, col, BLANK);
+                if (!board.isTileMarked(row, col)
+                        && !symmetry.hasEarlierEquivalent(stabilisers,
+                                row * board.getWidth() + col)) {
+                    board.makeMove(row, col, X);
+                    int moveValue = miniMax(board, depth, false);
+                    board.unmakeMove();
                     if (moveValue > bestValue) {
                         bestMove[0] = row;
                         bestMove[1] = col;
+                        bestMove[2] = moveValue;
                         bestValue = moveValue;
                     }
                 }
@@ -100,59 +119,10 @@ public class MiniMax {
      * @return value of the board
      */
     private static int evaluateBoard(Board board) {
-        int rowSum = 0;
-        int bWidth = board.getWidth();
-        int Xwin = X.getMark() * bWidth;
-        int Owin = O.getMark() * bWidth;
-
-        // Check rows for winner.
-        for (int row = 0; row < bWidth; row++) {
-            for (int col = 0; col < bWidth; col++) {
-                rowSum += board.getMarkAt(row, col).getMark();
-            }
-            if (rowSum == Xwin) {
-                return 10;
-            } else if (rowSum == Owin) {
-                return -10;
-            }
-            rowSum = 0;
-        }
-
-        // Check columns for winner.
-        rowSum = 0;
-        for (int col = 0; col < bWidth; col++) {
-            for (int row = 0; row < bWidth; row++) {
-                rowSum += board.getMarkAt(row, col).getMark();
-            }
-            if (rowSum == Xwin) {
-                return 10;
-            } else if (rowSum == Owin) {
-                return -10;
-            }
-            rowSum = 0;
-        }
-
-        // Check diagonals for winner.
-        // Top-left to bottom-right diagonal.
-        rowSum = 0;
-        for (int i = 0; i < bWidth; i++) {
-            rowSum += board.getMarkAt(i, i).getMark();
-        }
-        if (rowSum == Xwin) {
-            return 10;
-        } else if (rowSum == Owin) {
-            return -10;
-        }
-
-        // Top-right to bottom-left diagonal.
-        rowSum = 0;
-        int indexMax = bWidth - 1;
-        for (int i = 0; i <= indexMax; i++) {
-            rowSum += board.getMarkAt(i, indexMax - i).getMark();
-        }
-        if (rowSum == Xwin) {
+        Mark winner = board.getSearchWinner();
+        if (winner == X) {
             return 10;
-        } else if (rowSum == Owin) {
+        } else if (winner == O) {
             return -10;
         }
 
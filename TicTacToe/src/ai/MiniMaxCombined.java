@@ -1,6 +1,14 @@
 package ai;
 
+import ai.TranspositionTable.ReplacementPolicy;
 import game.Board;
+import game.Mark;
+import game.Symmetry;
+import game.Zobrist;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import static game.Mark.*;
 
@@ -12,11 +20,134 @@ import static game.Mark.*;
  */
 public class MiniMaxCombined {
 
-    private static final int MAX_DEPTH = 12;
+    static final int MAX_DEPTH = 12;
+    /**
+     * Value of a win before the depth it is found at is added, larger than
+     * any heuristic value so a win is always preferred.
+     */
+    static final int WIN_VALUE = 1 << 16;
+    private static final int MAX_HEURISTIC = WIN_VALUE / 2;
+    static final long DEFAULT_TABLE_BYTES = 16L << 20;
+
+    private static volatile TranspositionTable table = new TranspositionTable(
+            DEFAULT_TABLE_BYTES, ReplacementPolicy.DEPTH_PREFERRED);
+    /**
+     * Search options of the static methods, replaced as a whole so that a
+     * search reads one consistent set of them.
+     */
+    private static volatile EngineSettings searchOptions
+            = EngineSettings.DEFAULTS;
+    private static volatile double lastFirstMoveCutoffRate;
+    private static final List<Tablebase> TABLEBASES
+            = new CopyOnWriteArrayList<>();
+    private static final List<OpeningBook> BOOKS
+            = new CopyOnWriteArrayList<>();
 
     private MiniMaxCombined() {
     }
 
+    /**
+     * Replace the transposition table with an empty one of the given size.
+     * @param maxBytes Memory budget for the table in bytes
+     * @param policy Policy used when two positions share a slot of the table
+     */
+    public static void configureTable(long maxBytes, ReplacementPolicy policy) {
+        table = new TranspositionTable(maxBytes, policy);
+    }
+
+    /**
+     * @return The transposition table used by searches, its statistics give 
+     * the hit rate
+     */
+    public static TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Set the search options of the static methods: move ordering, the
+     * history heuristic and line potential.
+     * Engines created by {@link EngineRegistry} take theirs from their own
+     * {@link EngineSettings}.
+     * @param options Settings holding the options, the others are ignored
+     */
+    public static void setSearchOptions(EngineSettings options) {
+        searchOptions = options;
+    }
+
+    public static EngineSettings getSearchOptions() {
+        return searchOptions;
+    }
+
+    /**
+     * @return Fraction of the alpha-beta cutoffs in the last search made by 
+     * getBestMove which were caused by the first move searched at the node
+     */
+    public static double getFirstMoveCutoffRate() {
+        return lastFirstMoveCutoffRate;
+    }
+
+    /**
+     * Answer getBestMove from the given tablebase, instead of searching, on
+     * the boards it covers.
+     * @param tablebase Tablebase to look positions up in
+     */
+    public static void addTablebase(Tablebase tablebase) {
+        TABLEBASES.add(tablebase);
+    }
+
+    /**
+     * Answer getBestMove from the given opening book, instead of searching, 
+     * in the positions it holds.
+     * @param book Opening book to look positions up in
+     */
+    public static void addOpeningBook(OpeningBook book) {
+        BOOKS.add(book);
+    }
+
+    /**
+     * @param board Board to evaluate
+     * @return Best move according to a tablebase or opening book holding the
+     * position or null if there is none
+     */
+    static int[] lookUpMove(Board board) {
+        for (Tablebase tablebase : TABLEBASES) {
+            int[] move = tablebase.getBestMove(board);
+            if (move != null) {
+                return move;
+            }
+        }
+        for (OpeningBook book : BOOKS) {
+            int[] move = book.getBestMove(board);
+            if (move != null) {
+                return move;
+            }
+        }
+        return null;
+    }
+
+    static SearchContext newSearch() {
+        TranspositionTable current = table;
+        current.newSearch();
+        return newContext(current);
+    }
+
+    /**
+     * @param table Transposition table of the search
+     * @return State of a new search with the options set for the static
+     * methods
+     */
+    static SearchContext newContext(TranspositionTable table) {
+        return searchOptions.newContext(table);
+    }
+
+    /**
+     * Keep the first move cutoff rate of a search made by a static method.
+     */
+    private static SearchResult finishStatic(SearchResult result) {
+        lastFirstMoveCutoffRate = result.getStats().getFirstMoveCutoffRate();
+        return result;
+    }
+
     /**
      * Play moves on the board alternating between playing as X and O analysing 
      * the board each time to return the value of the highest value move for the
@@ -34,74 +165,307 @@ public class MiniMaxCombined {
      */
     public static int miniMax(Board board, int depth, int alpha, int beta,
             boolean isMax) {
-        int boardVal = evaluateBoard(board, depth);
+        SearchContext context = newContext(table);
+        int value = miniMax(board, depth, alpha, beta, isMax, context);
+        // Add the search's probes to the table's statistics.
+        context.finish(board.getSearchPly());
+        return value;
+    }
+
+    /**
+     * As {@link #miniMax(Board, int, int, int, boolean)}, looking positions up
+     * in the given transposition table before searching them and recording 
+     * the result afterwards. Positions are keyed by their canonical hash so 
+     * rotations and reflections share entries. Values include the depth they
+     * were found at so only entries searched to exactly the same depth are 
+     * reused.
+     */
+    static int miniMax(Board board, int depth, int alpha, int beta,
+            boolean isMax, SearchContext context) {
+        context.visitNode();
+        int boardVal = evaluateBoard(board, depth, context);
 
         // Terminal node (win/lose/draw) or max depth reached.
-        if (Math.abs(boardVal) > 0 || depth == 0 
+        if (board.getSearchWinner() != BLANK || depth == 0
                 || !board.anyMovesAvailable()) {
+            context.recordLeaf(board.getSearchPly());
             return boardVal;
         }
 
+        // Positions are stored in their canonical orientation, moves are 
+        // transformed between it and the board's orientation.
+        Symmetry symmetry = board.getSymmetry();
+        int transform = board.getCanonicalTransform();
+        long key = board.getSymmetricHash(transform)
+                ^ (isMax ? Zobrist.MAX_TO_MOVE : 0);
+        long entry = context.probe(key);
+        int tableMove = -1;
+        if (entry != TranspositionTable.MISS) {
+            int storedMove = TranspositionTable.moveOf(entry);
+            if (storedMove >= 0) {
+                tableMove = symmetry.transformTile(symmetry.inverse(transform),
+                        storedMove);
+            }
+        }
+        if (entry != TranspositionTable.MISS
+                && TranspositionTable.depthOf(entry) == depth) {
+            int storedVal = TranspositionTable.valueOf(entry);
+            switch (TranspositionTable.flagOf(entry)) {
+                case TranspositionTable.EXACT:
+                    return storedVal;
+                case TranspositionTable.LOWER_BOUND:
+                    alpha = Math.max(alpha, storedVal);
+                    break;
+                default:
+                    beta = Math.min(beta, storedVal);
+                    break;
+            }
+            if (alpha >= beta) {
+                return storedVal;
+            }
+        }
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+
+        int width = board.getWidth();
+        int tiles = width * board.getHeight();
+        int ply = board.getSearchPly();
+        int[] moves = context.moveList(ply, tiles);
+        int moveCount = 0;
+        for (int tile = 0; tile < tiles; tile++) {
+            if (!board.isTileMarked(tile / width, tile % width)) {
+                moves[moveCount++] = tile;
+            }
+        }
+        if (context.ordering != null) {
+            context.ordering.sort(moves, moveCount, ply, isMax, tableMove,
+                    board.getWinLines());
+        }
+
         // Maximising player, find the maximum attainable value.
         if (isMax) {
             int highestVal = Integer.MIN_VALUE;
-            for (int row = 0; row < board.getWidth(); row++) {
-                for (int col = 0; col < board.getWidth(); col++) {
-                    if (!board.isTileMarked(row, col)) {
-                        board.setMarkAt(row, col, X);
-                        highestVal = Math.max(highestVal, miniMax(board,
-                                depth - 1, alpha, beta, false));
-                        board.setMarkAt(row, col, BLANK);
-                        alpha = Math.max(alpha, highestVal);
-                        if (alpha >= beta) {
-                            return highestVal;
-                        }
-                    }
+            int bestTile = -1;
+            for (int i = 0; i < moveCount; i++) {
+                int tile = moves[i];
+                board.makeMove(tile / width, tile % width, X);
+                int moveVal = miniMax(board, depth - 1, alpha, beta, false,
+                        context);
+                board.unmakeMove();
+                if (moveVal > highestVal) {
+                    highestVal = moveVal;
+                    bestTile = tile;
+                }
+                alpha = Math.max(alpha, highestVal);
+                if (alpha >= beta) {
+                    recordCutoff(context, tile, i, ply, depth, isMax);
+                    break;
                 }
             }
-            return highestVal;
+            return record(context, key, depth, highestVal, alphaOrig, betaOrig,
+                    symmetry.transformTile(transform, bestTile));
             // Minimising player, find the minimum attainable value;
         } else {
             int lowestVal = Integer.MAX_VALUE;
-            for (int row = 0; row < board.getWidth(); row++) {
-                for (int col = 0; col < board.getWidth(); col++) {
-                    if (!board.isTileMarked(row, col)) {
-                        board.setMarkAt(row, col, O);
-                        lowestVal = Math.min(lowestVal, miniMax(board,
-                                depth - 1, alpha, beta, true));
-                        board.setMarkAt(row, col, BLANK);
-                        beta = Math.min(beta, lowestVal);
-                        if (beta <= alpha) {
-                            return lowestVal;
-                        }
-                    }
+            int bestTile = -1;
+            for (int i = 0; i < moveCount; i++) {
+                int tile = moves[i];
+                board.makeMove(tile / width, tile % width, O);
+                int moveVal = miniMax(board, depth - 1, alpha, beta, true,
+                        context);
+                board.unmakeMove();
+                if (moveVal < lowestVal) {
+                    lowestVal = moveVal;
+                    bestTile = tile;
+                }
+                beta = Math.min(beta, lowestVal);
+                if (beta <= alpha) {
+                    recordCutoff(context, tile, i, ply, depth, isMax);
+                    break;
                 }
             }
-            return lowestVal;
+            return record(context, key, depth, lowestVal, alphaOrig, betaOrig,
+                    symmetry.transformTile(transform, bestTile));
+        }
+    }
+
+    private static void recordCutoff(SearchContext context, int tile,
+            int index, int ply, int depth, boolean isMax) {
+        context.recordCutoff(index);
+        if (context.ordering != null) {
+            context.ordering.recordCutoff(tile, ply, depth, isMax);
         }
     }
 
     /**
-     * Evaluate every legal move on the board and return the best one.
+     * Store the value of a searched position in the transposition table, a 
+     * value outside the alpha-beta window it was searched with is only a bound
+     * on the position's true value.
+     * @return The value stored
+     */
+    private static int record(SearchContext context, long key, int depth,
+            int value, int alpha, int beta, int bestMove) {
+        int flag;
+        if (value <= alpha) {
+            flag = TranspositionTable.UPPER_BOUND;
+        } else if (value >= beta) {
+            flag = TranspositionTable.LOWER_BOUND;
+        } else {
+            flag = TranspositionTable.EXACT;
+        }
+        context.store(key, depth, value, flag, bestMove);
+        return value;
+    }
+
+    /**
+     * Evaluate every legal move on the board and return the best one, or 
+     * look it up if a tablebase or opening book holds the position.
      * @param board Board to evaluate
      * @return Coordinates of best move
      */
     public static int[] getBestMove(Board board) {
-        int[] bestMove = new int[]{-1, -1};
-        int bestValue = Integer.MIN_VALUE;
+        return search(board).getMove();
+    }
+
+    /**
+     * As {@link #getBestMove(Board)}, also returning the statistics of the
+     * search.
+     * @param board Board to evaluate
+     * @return Best move and the statistics of the search which found it
+     */
+    public static SearchResult search(Board board) {
+        return finishStatic(searchToDepth(board, MAX_DEPTH, newSearch()));
+    }
+
+    /**
+     * Search behind {@link #search(Board)} with the depth and search state
+     * given.
+     * @param board Board to evaluate
+     * @param depth The maximum depth of the game tree to search to
+     * @param context Search state of the calling thread
+     * @return Best move, its value and the statistics of the search
+     */
+    static SearchResult searchToDepth(Board board, int depth,
+            SearchContext context) {
+        int[] known = lookUpMove(board);
+        int[] found = known != null ? new int[]{known[0], known[1], 0}
+                : searchRoot(board, depth, context, 0);
+        return SearchResult.of(found, context, board.getSearchPly());
+    }
+
+    /**
+     * Search the board to increasing depths, starting from only looking one 
+     * move ahead, until the time budget runs out or a search reaches the end 
+     * of every game, and return the best move found by the last search which
+     * completed. An unfinished search is abandoned, so the time taken is 
+     * close to the budget regardless of the size of the board.
+     * @param board Board to evaluate
+     * @param timeBudgetMillis Time allowed for the search in milliseconds
+     * @return Coordinates of best move
+     */
+    public static int[] getBestMove(Board board, long timeBudgetMillis) {
+        return search(board, timeBudgetMillis).getMove();
+    }
+
+    /**
+     * As {@link #getBestMove(Board, long)}, also returning the statistics of
+     * the search.
+     * @param board Board to evaluate
+     * @param timeBudgetMillis Time allowed for the search in milliseconds
+     * @return Best move and the statistics of the search which found it
+     */
+    public static SearchResult search(Board board, long timeBudgetMillis) {
+        SearchContext context = newSearch();
+        int[] found = searchIteratively(board, timeBudgetMillis,
+                Integer.MAX_VALUE, context, move -> {
+                });
+        return finishStatic(SearchResult.of(found, context,
+                board.getSearchPly()));
+    }
 
-        for (int row = 0; row < board.getWidth(); row++) {
+    /**
+     * Iterative deepening search behind {@link #getBestMove(Board, long)}.
+     * @param board Board to evaluate
+     * @param timeBudgetMillis Time allowed for the search in milliseconds
+     * @param maxDepth Depth to stop deepening at if there is time left
+     * @param context Search state, stopping it ends the search early
+     * @param onIteration Given the best move found by each completed depth
+     * @return Row and column of the best move followed by its value, 0 if it
+     * was looked up
+     * @throws SearchContext.StoppedException If the search was stopped before
+     * its first depth completed
+     */
+    static int[] searchIteratively(Board board, long timeBudgetMillis,
+            int maxDepth, SearchContext context, Consumer<int[]> onIteration) {
+        int[] known = lookUpMove(board);
+        if (known != null) {
+            onIteration.accept(known);
+            return new int[]{known[0], known[1], 0};
+        }
+        long deadline = System.nanoTime() + timeBudgetMillis * 1_000_000;
+        // The board is left mid-search if a search is abandoned so search a 
+        // copy of it.
+        Board copy = new Board(board);
+        int[] found = searchRoot(copy, 0, context, 0);
+        onIteration.accept(new int[]{found[0], found[1]});
+        context.setDeadline(deadline);
+
+        int emptyTiles = 0;
+        for (int row = 0; row < board.getHeight(); row++) {
             for (int col = 0; col < board.getWidth(); col++) {
                 if (!board.isTileMarked(row, col)) {
-                    board.setMarkAt(row, col, X);
-                    int moveValue = miniMax(board, MAX_DEPTH, Integer.MIN_VALUE,
-                            Integer.MAX_VALUE, false);
-                    board.setMarkAt(row, col, BLANK);
-                    if (moveValue > bestValue) {
-                        bestMove[0] = row;
-                        bestMove[1] = col;
-                        bestValue = moveValue;
-                    }
+                    emptyTiles++;
+                }
+            }
+        }
+        // After the root move no more than emptyTiles - 1 moves remain.
+        for (int depth = 1; depth < emptyTiles && depth <= maxDepth;
+                depth++) {
+            try {
+                found = searchRoot(copy, depth, context, 0);
+            } catch (SearchContext.StoppedException e) {
+                break;
+            }
+            onIteration.accept(new int[]{found[0], found[1]});
+        }
+        return found;
+    }
+
+    /**
+     * Evaluate every legal move on the board to the given depth and return 
+     * the first of the best ones. Moves are searched in row-major order 
+     * starting from the given tile and wrapping around to the first tile.
+     * @param board Board to evaluate
+     * @param depth The maximum depth of the game tree to search to
+     * @param context Search state of the calling thread
+     * @param firstTile Index of the tile to search first
+     * @return Row and column of the best move followed by its value
+     */
+    static int[] searchRoot(Board board, int depth, SearchContext context,
+            int firstTile) {
+        int[] bestMove = new int[]{-1, -1, 0};
+        int bestValue = Integer.MIN_VALUE;
+        int width = board.getWidth();
+        int tiles = width * board.getHeight();
+        // Moves equivalent by symmetry to an earlier one have the same value.
+        Symmetry symmetry = board.getSymmetry();
+        int[] stabilisers = symmetry.stabilisers(board);
+
+        for (int i = 0; i < tiles; i++) {
+            int tile = (firstTile + i) % tiles;
+            int row = tile / width;
+            int col = tile % width;
+            if (!board.isTileMarked(row, col)
+                    && !symmetry.hasEarlierEquivalent(stabilisers, tile)) {
+                board.makeMove(row, col, X);
+                int moveValue = miniMax(board, depth, Integer.MIN_VALUE,
+                        Integer.MAX_VALUE, false, context);
+                board.unmakeMove();
+                if (moveValue > bestValue) {
+                    bestMove[0] = row;
+                    bestMove[1] = col;
+                    bestMove[2] = moveValue;
+                    bestValue = moveValue;
                 }
             }
         }
@@ -110,71 +474,37 @@ public class MiniMaxCombined {
 
     /**
      * Evaluate the given board from the perspective of the X player, return 
-     * 10 if a winning board configuration is found, -10 for a losing one and 0 
-     * for a draw, weight the value of a win/loss/draw according to how many 
+     * WIN_VALUE if a winning board configuration is found and -WIN_VALUE for
+     * a losing one, weight the value of a win/loss according to how many 
      * moves it would take to realise it using the depth of the game tree the
-     * board configuration is at.
+     * board configuration is at. Any other board is valued by its open lines.
      * @param board Board to evaluate
      * @param depth depth of the game tree the board configuration is at
      * @return value of the board
      */
-    private static int evaluateBoard(Board board, int depth) {
-        int rowSum = 0;
-        int bWidth = board.getWidth();
-        int Xwin = X.getMark() * bWidth;
-        int Owin = O.getMark() * bWidth;
-
-        // Check rows for winner.
-        for (int row = 0; row < bWidth; row++) {
-            for (int col = 0; col < bWidth; col++) {
-                rowSum += board.getMarkAt(row, col).getMark();
-            }
-            if (rowSum == Xwin) {
-                return 10 + depth;
-            } else if (rowSum == Owin) {
-                return -10 - depth;
-            }
-            rowSum = 0;
-        }
-
-        // Check columns for winner.
-        rowSum = 0;
-        for (int col = 0; col < bWidth; col++) {
-            for (int row = 0; row < bWidth; row++) {
-                rowSum += board.getMarkAt(row, col).getMark();
-            }
-            if (rowSum == Xwin) {
-                return 10 + depth;
-            } else if (rowSum == Owin) {
-                return -10 - depth;
-            }
-            rowSum = 0;
+    private static int evaluateBoard(Board board, int depth,
+            SearchContext context) {
+        Mark winner = board.getSearchWinner();
+        if (winner == X) {
+            return WIN_VALUE + depth;
+        } else if (winner == O) {
+            return -WIN_VALUE - depth;
         }
 
-        // Check diagonals for winner.
-        // Top-left to bottom-right diagonal.
-        rowSum = 0;
-        for (int i = 0; i < bWidth; i++) {
-            rowSum += board.getMarkAt(i, i).getMark();
-        }
-        if (rowSum == Xwin) {
-            return 10 + depth;
-        } else if (rowSum == Owin) {
-            return -10 - depth;
-        }
+        return evaluatePotential(board, context);
+    }
 
-        // Top-right to bottom-left diagonal.
-        rowSum = 0;
-        int indexMax = bWidth - 1;
-        for (int i = 0; i <= indexMax; i++) {
-            rowSum += board.getMarkAt(i, indexMax - i).getMark();
-        }
-        if (rowSum == Xwin) {
-            return 10 + depth;
-        } else if (rowSum == Owin) {
-            return -10 - depth;
+    /**
+     * @param board Board without a winner
+     * @param context Search evaluating the board
+     * @return The board's line potential for X, limited to well below a win,
+     * or 0 if the search's line potential evaluation is off
+     */
+    static int evaluatePotential(Board board, SearchContext context) {
+        if (!context.linePotential) {
+            return 0;
         }
-
-        return 0;
+        return Math.max(-MAX_HEURISTIC,
+                Math.min(MAX_HEURISTIC, board.getLinePotential()));
     }
 }
@@ -0,0 +1,98 @@
+package ai;
+
+import ai.TranspositionTable.ReplacementPolicy;
+import game.Board;
+import game.Position;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * MiniMaxCombined with its own transposition table, depth, time budget and
+ * search options.
+ * With a time budget the search deepens iteratively as
+ * {@link MiniMaxCombined#getBestMove(Board, long)} does, up to the depth,
+ * otherwise it searches to the depth as
+ * {@link MiniMaxCombined#getBestMove(Board)} does. Tablebases and opening
+ * books added to MiniMaxCombined are shared with every instance.
+ *
+ * @author DavidHurst
+ */
+final class MiniMaxCombinedEngine implements SearchEngine {
+
+    private final TranspositionTable table;
+    private final int maxDepth;
+    private final EngineSettings settings;
+    private final long timeBudgetMillis;
+    private volatile SearchContext running;
+
+    MiniMaxCombinedEngine(EngineSettings settings) {
+        this.settings = settings;
+        table = new TranspositionTable(
+                settings.tableBytesOr(MiniMaxCombined.DEFAULT_TABLE_BYTES),
+                ReplacementPolicy.DEPTH_PREFERRED);
+        maxDepth = settings.maxDepthOr(MiniMaxCombined.MAX_DEPTH);
+        timeBudgetMillis = settings.getTimeBudgetMillis();
+    }
+
+    @Override
+    public String getName() {
+        return "MiniMaxCombined";
+    }
+
+    @Override
+    public SearchResult search(Board board) {
+        return search(board, move -> {
+        });
+    }
+
+    @Override
+    public SearchResult search(Position position,
+            BooleanSupplier stopRequested) {
+        return searchUntil(position.toBoard(), move -> {
+        }, stopRequested);
+    }
+
+    @Override
+    public SearchResult search(Board board, Consumer<int[]> onProgress) {
+        return searchUntil(board, onProgress, null);
+    }
+
+    private SearchResult searchUntil(Board board, Consumer<int[]> onProgress,
+            BooleanSupplier stopRequested) {
+        table.newSearch();
+        SearchContext context = settings.newContext(table);
+        context.setStopCondition(stopRequested);
+        running = context;
+        int rootPly = board.getSearchPly();
+        try {
+            if (timeBudgetMillis > 0) {
+                return SearchResult.of(MiniMaxCombined.searchIteratively(
+                        board, timeBudgetMillis, maxDepth, context,
+                        onProgress), context, rootPly);
+            }
+            return MiniMaxCombined.searchToDepth(board, maxDepth, context);
+        } catch (SearchContext.StoppedException e) {
+            // Leave the board as it was given.
+            while (board.getSearchPly() > rootPly) {
+                board.unmakeMove();
+            }
+            throw e;
+        } finally {
+            running = null;
+        }
+    }
+
+    @Override
+    public void stop() {
+        SearchContext context = running;
+        if (context != null) {
+            context.stop();
+        }
+    }
+
+    @Override
+    public void clear() {
+        table.clear();
+    }
+}
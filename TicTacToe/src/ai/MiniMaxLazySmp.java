@@ -0,0 +1,189 @@
+package ai;
+
+import game.Board;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * MiniMaxCombined searched by several threads at once in the style of Lazy
+ * SMP. Every thread searches the whole game tree from the root on its own copy
+ * of the board and the threads only communicate through MiniMaxCombined's
+ * lock-free transposition table: helper threads start from different root
+ * moves so they fill the table with positions the main thread has yet to
+ * reach, which the main thread then finds instead of searching. The main
+ * thread's result is returned and the helpers are stopped as soon as it is
+ * ready.
+ * <p>
+ * Values in the table include the depth they were found at, so the helpers
+ * are staggered by the order they search the root moves in rather than by
+ * searching to different depths.
+ *
+ * @author DavidHurst
+ */
+public class MiniMaxLazySmp implements SearchEngine {
+
+    private final ExecutorService helpers;
+    private final int threads;
+    private final TranspositionTable table;
+    private final int maxDepth;
+    private final EngineSettings settings;
+    /**
+     * Replaced, never modified, by each search so that other threads reading
+     * it see a complete array.
+     */
+    private volatile long[] nodeCounts = new long[0];
+
+    /**
+     * Search with MiniMaxCombined's transposition table and depth.
+     * @param threads Number of threads to search with, including the calling
+     * thread
+     */
+    public MiniMaxLazySmp(int threads) {
+        this(threads, null, MiniMaxCombined.MAX_DEPTH, null);
+    }
+
+    /**
+     * @param threads Number of threads to search with, including the calling
+     * thread
+     * @param table Transposition table of this searcher or null to use
+     * MiniMaxCombined's
+     * @param maxDepth The maximum depth of the game tree to search to
+     * @param settings Search options of this searcher or null to use those
+     * set for MiniMaxCombined's static methods
+     */
+    MiniMaxLazySmp(int threads, TranspositionTable table, int maxDepth,
+            EngineSettings settings) {
+        this.threads = threads;
+        this.table = table;
+        this.maxDepth = maxDepth;
+        this.settings = settings;
+        helpers = threads > 1
+                ? Executors.newFixedThreadPool(threads - 1, runnable -> {
+                    Thread thread = new Thread(runnable, "lazy-smp-helper");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+    }
+
+    /**
+     * Search the board on every thread and return the best move found by the
+     * calling thread, which is the same move MiniMaxCombined would choose.
+     * @param board Board to evaluate
+     * @return Coordinates of best move
+     */
+    @Override
+    public int[] getBestMove(Board board) {
+        return search(board).getMove();
+    }
+
+    private SearchContext newContext(TranspositionTable table) {
+        return settings != null ? settings.newContext(table)
+                : MiniMaxCombined.newContext(table);
+    }
+
+    @Override
+    public SearchResult search(Board board) {
+        TranspositionTable table = this.table != null ? this.table
+                : MiniMaxCombined.getTable();
+        table.newSearch();
+        SearchContext main = newContext(table);
+        int[] known = MiniMaxCombined.lookUpMove(board);
+        if (known != null) {
+            return SearchResult.of(new int[]{known[0], known[1], 0}, main,
+                    board.getSearchPly());
+        }
+        int tiles = board.getWidth() * board.getHeight();
+
+        List<SearchContext> contexts = new ArrayList<>();
+        contexts.add(main);
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            SearchContext context = newContext(table);
+            Board copy = new Board(board);
+            int firstTile = i * tiles / threads;
+            contexts.add(context);
+            running.add(helpers.submit(() -> {
+                try {
+                    MiniMaxCombined.searchRoot(copy, maxDepth, context,
+                            firstTile);
+                } catch (SearchContext.StoppedException e) {
+                    // The main thread has finished.
+                }
+            }));
+        }
+
+        int[] found;
+        try {
+            found = MiniMaxCombined.searchRoot(new Board(board), maxDepth,
+                    main, 0);
+        } finally {
+            for (SearchContext context : contexts) {
+                if (context != main) {
+                    context.stop();
+                }
+            }
+            for (Future<?> helper : running) {
+                awaitQuietly(helper);
+            }
+        }
+
+        long[] counts = new long[threads];
+        for (int i = 0; i < threads; i++) {
+            counts[i] = contexts.get(i).nodes;
+        }
+        nodeCounts = counts;
+        return new SearchResult(new int[]{found[0], found[1]}, found[2],
+                SearchContext.finishAll(contexts, board.getSearchPly()));
+    }
+
+    private static void awaitQuietly(Future<?> helper) {
+        try {
+            helper.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // A helper failing does not affect the main thread's result.
+        }
+    }
+
+    /**
+     * @return Number of nodes each thread visited during the last search, the
+     * calling thread's count is first
+     */
+    public long[] getNodeCounts() {
+        long[] counts = nodeCounts;
+        return Arrays.copyOf(counts, counts.length);
+    }
+
+    @Override
+    public String getName() {
+        return "MiniMaxLazySmp";
+    }
+
+    @Override
+    public void clear() {
+        if (table != null) {
+            table.clear();
+        }
+    }
+
+    /**
+     * Stop the helper threads, the searcher cannot be used afterwards.
+     */
+    @Override
+    public void shutdown() {
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+}
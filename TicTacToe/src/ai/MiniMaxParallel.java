@@ -0,0 +1,170 @@
+package ai;
+
+import game.Board;
+import game.Symmetry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static game.Mark.*;
+
+/**
+ * MiniMaxCombined with the moves at the root of the game tree searched in
+ * parallel. Each root move is searched on its own copy of the board by a
+ * worker of a ForkJoinPool, the workers share a transposition table and the
+ * best value found so far so that later moves are still pruned.
+ *
+ * @author DavidHurst
+ */
+public class MiniMaxParallel implements SearchEngine {
+
+    private final ForkJoinPool pool;
+    private final int threads;
+    private final TranspositionTable table;
+    private final int maxDepth;
+    private final EngineSettings settings;
+
+    /**
+     * Search with MiniMaxCombined's transposition table and depth.
+     * @param threads Number of worker threads to search with
+     */
+    public MiniMaxParallel(int threads) {
+        this(threads, null, MiniMaxCombined.MAX_DEPTH, null);
+    }
+
+    /**
+     * @param threads Number of worker threads to search with
+     * @param table Transposition table of this searcher or null to use
+     * MiniMaxCombined's
+     * @param maxDepth The maximum depth of the game tree to search to
+     * @param settings Search options of this searcher or null to use those
+     * set for MiniMaxCombined's static methods
+     */
+    MiniMaxParallel(int threads, TranspositionTable table, int maxDepth,
+            EngineSettings settings) {
+        this.threads = threads;
+        this.table = table;
+        this.maxDepth = maxDepth;
+        this.settings = settings;
+        pool = new ForkJoinPool(threads);
+    }
+
+    @Override
+    public String getName() {
+        return "MiniMaxParallel";
+    }
+
+    /**
+     * Search every legal move on the board in parallel and return the best
+     * one. A move is searched with alpha set just below the best value found
+     * so far: a move which cannot match that value fails low and is
+     * discarded, any move which can is given its exact value. The first of the
+     * highest value moves in row-major order is chosen, so the result is the
+     * same as {@link MiniMaxCombined#getBestMove(Board)}.
+     * @param board Board to evaluate
+     * @return Coordinates of best move
+     */
+    @Override
+    public int[] getBestMove(Board board) {
+        return search(board).getMove();
+    }
+
+    private SearchContext newContext(TranspositionTable table) {
+        return settings != null ? settings.newContext(table)
+                : MiniMaxCombined.newContext(table);
+    }
+
+    @Override
+    public SearchResult search(Board board) {
+        TranspositionTable table = this.table != null ? this.table
+                : MiniMaxCombined.getTable();
+        table.newSearch();
+        List<SearchContext> contexts = new ArrayList<>();
+        contexts.add(newContext(table));
+        int[] known = MiniMaxCombined.lookUpMove(board);
+        if (known != null) {
+            return SearchResult.of(new int[]{known[0], known[1], 0},
+                    contexts.get(0), board.getSearchPly());
+        }
+        Symmetry symmetry = board.getSymmetry();
+        int[] stabilisers = symmetry.stabilisers(board);
+        int width = board.getWidth();
+
+        AtomicInteger bestValue = new AtomicInteger(Integer.MIN_VALUE);
+        List<int[]> moves = new ArrayList<>();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int row = 0; row < board.getHeight(); row++) {
+            for (int col = 0; col < width; col++) {
+                if (!board.isTileMarked(row, col)
+                        && !symmetry.hasEarlierEquivalent(stabilisers,
+                                row * width + col)) {
+                    int[] move = new int[]{row, col};
+                    SearchContext context = newContext(table);
+                    moves.add(move);
+                    contexts.add(context);
+                    tasks.add(() -> searchMove(new Board(board), move,
+                            bestValue, context));
+                }
+            }
+        }
+
+        int[] bestMove = new int[]{-1, -1};
+        int best = Integer.MIN_VALUE;
+        List<Future<Integer>> results = pool.invokeAll(tasks);
+        for (int i = 0; i < results.size(); i++) {
+            int moveValue = getResult(results.get(i));
+            if (moveValue > best) {
+                bestMove = moves.get(i);
+                best = moveValue;
+            }
+        }
+        return new SearchResult(bestMove, best == Integer.MIN_VALUE ? 0 : best,
+                SearchContext.finishAll(contexts, board.getSearchPly()));
+    }
+
+    private int searchMove(Board board, int[] move, AtomicInteger bestValue,
+            SearchContext context) {
+        int best = bestValue.get();
+        int alpha = best == Integer.MIN_VALUE ? best : best - 1;
+        board.makeMove(move[0], move[1], X);
+        int moveValue = MiniMaxCombined.miniMax(board, maxDepth, alpha,
+                Integer.MAX_VALUE, false, context);
+        bestValue.accumulateAndGet(moveValue, Math::max);
+        return moveValue;
+    }
+
+    private static int getResult(Future<Integer> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (table != null) {
+            table.clear();
+        }
+    }
+
+    /**
+     * Stop the worker threads, the searcher cannot be used afterwards.
+     */
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+}
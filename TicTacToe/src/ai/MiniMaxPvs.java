@@ -0,0 +1,366 @@
+package ai;
+
+import ai.TranspositionTable.ReplacementPolicy;
+import game.Board;
+import game.Symmetry;
+import game.Zobrist;
+
+import static game.Mark.*;
+
+/**
+ * MiniMaxCombined in its negamax form, where every node maximises the value
+ * for the player to move so one loop serves both players, searched with
+ * Principal Variation Search. The first move at a node, which move ordering
+ * makes the most likely to be best, is searched with the full alpha-beta
+ * window and every other move with a null window which only proves that it
+ * is no better. A move which turns out to be better is searched again with
+ * the full window.
+ * <p>
+ * getBestMove deepens iteratively, searching each depth with an aspiration
+ * window around the value found by the previous depth, and falls back to the
+ * full window if the value lies outside it. When its maximum depth reaches
+ * the end of every game it searches that depth at once instead. Values are
+ * on MiniMaxCombined's scale so the move returned has the same value as
+ * MiniMaxCombined's, though it may be a different one of the equally good
+ * moves. The transposition table is separate from MiniMaxCombined's as its
+ * values are from the point of view of the player to move rather than X.
+ *
+ * @author DavidHurst
+ */
+public class MiniMaxPvs {
+
+    static final int MAX_DEPTH = 12;
+    static final long DEFAULT_TABLE_BYTES = 16L << 20;
+    /**
+     * Larger than any value a position can have, used instead of
+     * Integer.MIN_VALUE and MAX_VALUE so that values can be negated.
+     */
+    private static final int INFINITY = 1_000_000;
+    /**
+     * Half the width of the aspiration window. A win found one depth earlier
+     * is worth one more when found again, as the search is one move deeper.
+     */
+    private static final int ASPIRATION = 2;
+
+    private static volatile TranspositionTable table = new TranspositionTable(
+            DEFAULT_TABLE_BYTES, ReplacementPolicy.DEPTH_PREFERRED);
+    private static volatile EngineSettings searchOptions
+            = EngineSettings.DEFAULTS;
+    private static volatile double lastFirstMoveCutoffRate;
+
+    private MiniMaxPvs() {
+    }
+
+    /**
+     * Replace the transposition table with an empty one of the given size.
+     * @param maxBytes Memory budget for the table in bytes
+     * @param policy Policy used when two positions share a slot of the table
+     */
+    public static void configureTable(long maxBytes, ReplacementPolicy policy) {
+        table = new TranspositionTable(maxBytes, policy);
+    }
+
+    public static TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Set the search options of the static methods: move ordering, the
+     * history heuristic and line potential. Engines created by
+     * {@link EngineRegistry} take theirs from their own
+     * {@link EngineSettings}.
+     * @param options Settings holding the options, the others are ignored
+     */
+    public static void setSearchOptions(EngineSettings options) {
+        searchOptions = options;
+    }
+
+    public static EngineSettings getSearchOptions() {
+        return searchOptions;
+    }
+
+    /**
+     * @return Fraction of the cutoffs in the last search made by getBestMove
+     * which were caused by the first move searched at the node
+     */
+    public static double getFirstMoveCutoffRate() {
+        return lastFirstMoveCutoffRate;
+    }
+
+    /**
+     * Search the position with Principal Variation Search.
+     * @param board Board to evaluate
+     * @param depth The maximum depth of the game tree to search to
+     * @param alpha Value the player to move is already assured of
+     * @param beta Value the opponent is already assured of, from the point of
+     * view of the player to move
+     * @param crossTurn Whether X is to move
+     * @param context Search state of the calling thread
+     * @return Value of the board for the player to move
+     */
+    static int negaMax(Board board, int depth, int alpha, int beta,
+            boolean crossTurn, SearchContext context) {
+        context.visitNode();
+        // Only the player who has just moved can have completed a line.
+        if (board.getSearchWinner() != BLANK) {
+            context.recordLeaf(board.getSearchPly());
+            return -MiniMaxCombined.WIN_VALUE - depth;
+        }
+        if (depth == 0 || !board.anyMovesAvailable()) {
+            context.recordLeaf(board.getSearchPly());
+            int potential = MiniMaxCombined.evaluatePotential(board,
+                    context);
+            return crossTurn ? potential : -potential;
+        }
+
+        Symmetry symmetry = board.getSymmetry();
+        int transform = board.getCanonicalTransform();
+        long key = board.getSymmetricHash(transform)
+                ^ (crossTurn ? Zobrist.MAX_TO_MOVE : 0);
+        long entry = context.probe(key);
+        int tableMove = -1;
+        if (entry != TranspositionTable.MISS) {
+            int storedMove = TranspositionTable.moveOf(entry);
+            if (storedMove >= 0) {
+                tableMove = symmetry.transformTile(symmetry.inverse(transform),
+                        storedMove);
+            }
+            if (TranspositionTable.depthOf(entry) == depth) {
+                int storedVal = TranspositionTable.valueOf(entry);
+                switch (TranspositionTable.flagOf(entry)) {
+                    case TranspositionTable.EXACT:
+                        return storedVal;
+                    case TranspositionTable.LOWER_BOUND:
+                        alpha = Math.max(alpha, storedVal);
+                        break;
+                    default:
+                        beta = Math.min(beta, storedVal);
+                        break;
+                }
+                if (alpha >= beta) {
+                    return storedVal;
+                }
+            }
+        }
+        int alphaOrig = alpha;
+
+        int width = board.getWidth();
+        int tiles = width * board.getHeight();
+        int ply = board.getSearchPly();
+        int[] moves = context.moveList(ply, tiles);
+        int moveCount = 0;
+        for (int tile = 0; tile < tiles; tile++) {
+            if (!board.isTileMarked(tile / width, tile % width)) {
+                moves[moveCount++] = tile;
+            }
+        }
+        if (context.ordering != null) {
+            context.ordering.sort(moves, moveCount, ply, crossTurn, tableMove,
+                    board.getWinLines());
+        }
+
+        int best = -INFINITY;
+        int bestTile = -1;
+        for (int i = 0; i < moveCount; i++) {
+            int tile = moves[i];
+            board.makeMove(tile / width, tile % width, crossTurn ? X : O);
+            int value;
+            if (i == 0) {
+                value = -negaMax(board, depth - 1, -beta, -alpha, !crossTurn,
+                        context);
+            } else {
+                value = -negaMax(board, depth - 1, -alpha - 1, -alpha,
+                        !crossTurn, context);
+                if (value > alpha && value < beta) {
+                    value = -negaMax(board, depth - 1, -beta, -value,
+                            !crossTurn, context);
+                }
+            }
+            board.unmakeMove();
+            if (value > best) {
+                best = value;
+                bestTile = tile;
+            }
+            alpha = Math.max(alpha, best);
+            if (alpha >= beta) {
+                context.recordCutoff(i);
+                if (context.ordering != null) {
+                    context.ordering.recordCutoff(tile, ply, depth, crossTurn);
+                }
+                break;
+            }
+        }
+
+        int flag;
+        if (best <= alphaOrig) {
+            flag = TranspositionTable.UPPER_BOUND;
+        } else if (best >= beta) {
+            flag = TranspositionTable.LOWER_BOUND;
+        } else {
+            flag = TranspositionTable.EXACT;
+        }
+        context.store(key, depth, best, flag,
+                symmetry.transformTile(transform, bestTile));
+        return best;
+    }
+
+    /**
+     * Search the board to increasing depths up to MiniMaxCombined's maximum
+     * depth, each within an aspiration window around the previous depth's
+     * value, and return the best move found by the deepest search.
+     * @param board Board to evaluate
+     * @return Coordinates of best move
+     */
+    public static int[] getBestMove(Board board) {
+        return search(board).getMove();
+    }
+
+    /**
+     * As {@link #getBestMove(Board)}, also returning the statistics of the
+     * search.
+     * @param board Board to evaluate
+     * @return Best move and the statistics of the search which found it
+     */
+    public static SearchResult search(Board board) {
+        TranspositionTable current = table;
+        current.newSearch();
+        SearchResult result = searchToDepth(board, MAX_DEPTH,
+                searchOptions.newContext(current));
+        lastFirstMoveCutoffRate = result.getStats().getFirstMoveCutoffRate();
+        return result;
+    }
+
+    /**
+     * Search behind {@link #search(Board)} with the maximum depth and search
+     * state given. A tablebase or opening book added to MiniMaxCombined
+     * answers the positions it holds. The root's value is stored in the table
+     * as {@link #negaMax} would store it, so searching the position again
+     * with the table is a single lookup.
+     * @param board Board to evaluate
+     * @param maxDepth Depth to stop deepening at
+     * @param context Search state of the calling thread
+     * @return Best move, its value and the statistics of the search
+     */
+    static SearchResult searchToDepth(Board board, int maxDepth,
+            SearchContext context) {
+        int rootPly = board.getSearchPly();
+        int[] known = MiniMaxCombined.lookUpMove(board);
+        if (known != null) {
+            return SearchResult.of(new int[]{known[0], known[1], 0}, context,
+                    rootPly);
+        }
+        int width = board.getWidth();
+        int tiles = width * board.getHeight();
+        int emptyTiles = 0;
+        for (int tile = 0; tile < tiles; tile++) {
+            if (!board.isTileMarked(tile / width, tile % width)) {
+                emptyTiles++;
+            }
+        }
+        // After the root move no more than emptyTiles - 1 moves remain.
+        int lastDepth = Math.min(maxDepth, emptyTiles - 1);
+
+        Symmetry symmetry = board.getSymmetry();
+        int transform = board.getCanonicalTransform();
+        long key = board.getSymmetricHash(transform) ^ Zobrist.MAX_TO_MOVE;
+        long entry = context.probe(key);
+        if (entry != TranspositionTable.MISS
+                && TranspositionTable.depthOf(entry) == lastDepth + 1
+                && TranspositionTable.flagOf(entry) == TranspositionTable.EXACT
+                && TranspositionTable.moveOf(entry) >= 0) {
+            int tile = symmetry.transformTile(symmetry.inverse(transform),
+                    TranspositionTable.moveOf(entry));
+            return SearchResult.of(new int[]{tile / width, tile % width,
+                TranspositionTable.valueOf(entry)}, context, rootPly);
+        }
+
+        int[] result = deepen(board, lastDepth, emptyTiles, context);
+        if (result[0] < 0) {
+            return SearchResult.of(result, context, rootPly);
+        }
+        context.store(key, lastDepth + 1, result[2], TranspositionTable.EXACT,
+                symmetry.transformTile(transform, result[0] * width
+                        + result[1]));
+        return SearchResult.of(result, context, rootPly);
+    }
+
+    /**
+     * Search to the last depth, at once if it reaches the end of every game
+     * and otherwise deepening iteratively with aspiration windows. The table
+     * only reuses values of the same depth, so each shallower iteration
+     * replaces entries earlier searches left at the depths the last one
+     * needs, which costs more than its window saves once the whole game is
+     * searched.
+     * @return Row and column of the best move followed by its exact value
+     */
+    private static int[] deepen(Board board, int lastDepth, int emptyTiles,
+            SearchContext context) {
+        if (lastDepth == emptyTiles - 1) {
+            return searchRoot(board, lastDepth, -INFINITY, INFINITY, -1,
+                    context);
+        }
+        int[] result = searchRoot(board, 0, -INFINITY, INFINITY, -1,
+                context);
+        for (int depth = 1; depth <= lastDepth; depth++) {
+            int previous = result[2];
+            int alpha = previous - ASPIRATION;
+            int beta = previous + ASPIRATION;
+            int firstTile = result[0] * board.getWidth() + result[1];
+            int[] found = searchRoot(board, depth, alpha, beta, firstTile,
+                    context);
+            if (found[2] <= alpha || found[2] >= beta) {
+                found = searchRoot(board, depth, -INFINITY, INFINITY,
+                        firstTile, context);
+            }
+            result = found;
+        }
+        return result;
+    }
+
+    /**
+     * Search every legal move for X, the given one first and the rest in
+     * row-major order, with Principal Variation Search.
+     * @return Row and column of the best move followed by its value
+     */
+    private static int[] searchRoot(Board board, int depth, int alpha,
+            int beta, int firstTile, SearchContext context) {
+        int width = board.getWidth();
+        int tiles = width * board.getHeight();
+        Symmetry symmetry = board.getSymmetry();
+        int[] stabilisers = symmetry.stabilisers(board);
+        int[] result = {-1, -1, -INFINITY};
+        boolean first = true;
+        for (int i = -1; i < tiles; i++) {
+            int tile = i < 0 ? firstTile : i;
+            if ((i >= 0 && tile == firstTile) || tile < 0
+                    || board.isTileMarked(tile / width, tile % width)
+                    || symmetry.hasEarlierEquivalent(stabilisers, tile)) {
+                continue;
+            }
+            board.makeMove(tile / width, tile % width, X);
+            int value;
+            if (first) {
+                value = -negaMax(board, depth, -beta, -alpha, false, context);
+                first = false;
+            } else {
+                value = -negaMax(board, depth, -alpha - 1, -alpha, false,
+                        context);
+                if (value > alpha && value < beta) {
+                    value = -negaMax(board, depth, -beta, -value, false,
+                            context);
+                }
+            }
+            board.unmakeMove();
+            if (value > result[2]) {
+                result[0] = tile / width;
+                result[1] = tile % width;
+                result[2] = value;
+            }
+            alpha = Math.max(alpha, value);
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,78 @@
+package ai;
+
+import ai.TranspositionTable.ReplacementPolicy;
+import game.Board;
+import game.Position;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * MiniMaxPvs with its own transposition table, depth and search options. The
+ * search always deepens to the depth, a time budget is not used.
+ *
+ * @author DavidHurst
+ */
+final class MiniMaxPvsEngine implements SearchEngine {
+
+    private final TranspositionTable table;
+    private final int maxDepth;
+    private final EngineSettings settings;
+    private volatile SearchContext running;
+
+    MiniMaxPvsEngine(EngineSettings settings) {
+        this.settings = settings;
+        table = new TranspositionTable(
+                settings.tableBytesOr(MiniMaxPvs.DEFAULT_TABLE_BYTES),
+                ReplacementPolicy.DEPTH_PREFERRED);
+        maxDepth = settings.maxDepthOr(MiniMaxPvs.MAX_DEPTH);
+    }
+
+    @Override
+    public String getName() {
+        return "MiniMaxPvs";
+    }
+
+    @Override
+    public SearchResult search(Board board) {
+        return searchUntil(board, null);
+    }
+
+    @Override
+    public SearchResult search(Position position,
+            BooleanSupplier stopRequested) {
+        return searchUntil(position.toBoard(), stopRequested);
+    }
+
+    private SearchResult searchUntil(Board board,
+            BooleanSupplier stopRequested) {
+        table.newSearch();
+        SearchContext context = settings.newContext(table);
+        context.setStopCondition(stopRequested);
+        running = context;
+        int rootPly = board.getSearchPly();
+        try {
+            return MiniMaxPvs.searchToDepth(board, maxDepth, context);
+        } catch (SearchContext.StoppedException e) {
+            // Leave the board as it was given.
+            while (board.getSearchPly() > rootPly) {
+                board.unmakeMove();
+            }
+            throw e;
+        } finally {
+            running = null;
+        }
+    }
+
+    @Override
+    public void stop() {
+        SearchContext context = running;
+        if (context != null) {
+            context.stop();
+        }
+    }
+
+    @Override
+    public void clear() {
+        table.clear();
+    }
+}
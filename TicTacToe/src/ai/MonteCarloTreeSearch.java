@@ -0,0 +1,468 @@
+package ai;
+
+import game.Board;
+import game.Mark;
+import game.Position;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import static game.Mark.*;
+
+/**
+ * Monte Carlo Tree Search, for boards too large for minimax to search to the
+ * end of the game. Rather than evaluating positions the search plays random
+ * games from them and grows a tree towards the moves which win most often,
+ * choosing which move to explore with the UCT formula so that moves which
+ * have been tried less are still explored.
+ * <p>
+ * Random games are played with {@link Board#makeMove(int, int, Mark)} and
+ * {@link Board#unmakeMove()} on a copy of the board so they allocate nothing.
+ * The part of the tree below the position after the previous search's move
+ * and the opponent's reply is kept for the next search. With more than one
+ * thread each thread grows its own tree and the visits of the moves at their
+ * roots are added up to choose the move (root parallelisation).
+ * <p>
+ * An instance keeps its trees between searches so it must only be used by
+ * one thread at a time.
+ *
+ * @author DavidHurst
+ */
+public class MonteCarloTreeSearch implements SearchEngine {
+
+    private static final double EXPLORATION = Math.sqrt(2);
+    /**
+     * The clock is only read every 64 playouts.
+     */
+    private static final int CLOCK_CHECK_MASK = 63;
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+
+    /**
+     * A position in the tree, reached by the previous player marking the
+     * node's tile.
+     */
+    private static final class Node {
+
+        final int tile;
+        /**
+         * Legal moves in a random order, the first expanded of them have
+         * been tried and have children.
+         */
+        final int[] moves;
+        final Node[] children;
+        int expanded;
+        int visits;
+        /**
+         * Wins for the player who moved to this position, a draw counts as
+         * half a win.
+         */
+        double wins;
+
+        /**
+         * @param tile Tile marked to reach the position
+         * @param board Board in the position
+         * @param random Source of the order the moves are tried in
+         */
+        Node(int tile, Board board, SplittableRandom random) {
+            this.tile = tile;
+            int width = board.getWidth();
+            int tiles = width * board.getHeight();
+            int[] blanks = new int[tiles];
+            int count = 0;
+            if (board.getSearchWinner() == BLANK) {
+                for (int t = 0; t < tiles; t++) {
+                    if (!board.isTileMarked(t / width, t % width)) {
+                        blanks[count++] = t;
+                    }
+                }
+            }
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = blanks[i];
+                blanks[i] = blanks[j];
+                blanks[j] = swap;
+            }
+            moves = Arrays.copyOf(blanks, count);
+            children = new Node[count];
+        }
+
+        Node child(int tile) {
+            for (int i = 0; i < expanded; i++) {
+                if (children[i].tile == tile) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * One thread's tree along with its board and random numbers.
+     */
+    private static final class Tree {
+
+        final SplittableRandom random;
+        Node root;
+        Board rootBoard;
+        int[] blanks = new int[0];
+        Node[] path = new Node[0];
+        long playouts;
+
+        Tree(long seed) {
+            random = new SplittableRandom(seed);
+        }
+    }
+
+    private final int threads;
+    private final long timeBudgetMillis;
+    private final long playoutBudget;
+    private final Tree[] trees;
+    private final ExecutorService helpers;
+    private long lastPlayouts;
+    private long lastNanos;
+    private volatile boolean stopped;
+
+    /**
+     * Search with a single thread for the given time per move.
+     * @param timeBudgetMillis Time allowed for each search in milliseconds
+     */
+    public MonteCarloTreeSearch(long timeBudgetMillis) {
+        this(1, timeBudgetMillis, 0);
+    }
+
+    /**
+     * A search stops once either budget is used up, a budget of 0 is no
+     * limit but at least one must be set.
+     * @param threads Number of threads, each growing its own tree
+     * @param timeBudgetMillis Time allowed for each search in milliseconds
+     * @param playoutBudget Random games to play in each search, shared
+     * between the threads
+     */
+    public MonteCarloTreeSearch(int threads, long timeBudgetMillis,
+            long playoutBudget) {
+        if (threads < 1 || (timeBudgetMillis <= 0 && playoutBudget <= 0)) {
+            throw new IllegalArgumentException(
+                    "A search needs a thread and a time or playout budget");
+        }
+        this.threads = threads;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.playoutBudget = playoutBudget;
+        trees = new Tree[threads];
+        for (int i = 0; i < threads; i++) {
+            trees[i] = new Tree(SEED + i);
+        }
+        helpers = threads > 1
+                ? Executors.newFixedThreadPool(threads - 1, runnable -> {
+                    Thread thread = new Thread(runnable, "mcts-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+    }
+
+    @Override
+    public String getName() {
+        return "MonteCarloTreeSearch";
+    }
+
+    /**
+     * Search the board until the budget is used up or the search is stopped
+     * and return the move visited most often.
+     * @param board Board to evaluate, X is to move
+     * @return Coordinates of best move
+     */
+    @Override
+    public int[] getBestMove(Board board) {
+        return search(board).getMove();
+    }
+
+    /**
+     * The score is the share of X's wins in the random games through the
+     * chosen move, in thousandths with a draw counting as half a win, and
+     * the nodes are the random games played.
+     */
+    @Override
+    public SearchResult search(Board board) {
+        return searchUntil(board, () -> false);
+    }
+
+    @Override
+    public SearchResult search(Position position,
+            BooleanSupplier stopRequested) {
+        return searchUntil(position.toBoard(), stopRequested);
+    }
+
+    private SearchResult searchUntil(Board board,
+            BooleanSupplier stopRequested) {
+        stopped = false;
+        long start = System.nanoTime();
+        long deadline = timeBudgetMillis > 0
+                ? start + timeBudgetMillis * 1_000_000 : Long.MAX_VALUE;
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            Tree tree = trees[i];
+            long budget = playoutShare(i);
+            running.add(helpers.submit(() -> search(tree, board, deadline,
+                    budget, stopRequested)));
+        }
+        search(trees[0], board, deadline, playoutShare(0), stopRequested);
+        for (Future<?> helper : running) {
+            await(helper);
+        }
+
+        int width = board.getWidth();
+        int tiles = width * board.getHeight();
+        long[] visits = new long[tiles];
+        double[] wins = new double[tiles];
+        long playouts = 0;
+        for (Tree tree : trees) {
+            playouts += tree.playouts;
+            Node root = tree.root;
+            for (int i = 0; i < root.expanded; i++) {
+                visits[root.children[i].tile] += root.children[i].visits;
+                wins[root.children[i].tile] += root.children[i].wins;
+            }
+        }
+        lastPlayouts = playouts;
+        lastNanos = System.nanoTime() - start;
+        boolean complete = !stopped && !stopRequested.getAsBoolean();
+
+        int bestTile = -1;
+        for (int tile = 0; tile < tiles; tile++) {
+            if (!board.isTileMarked(tile / width, tile % width)
+                    && (bestTile < 0 || visits[tile] > visits[bestTile])) {
+                bestTile = tile;
+            }
+        }
+        int[] move = bestTile < 0 ? new int[]{-1, -1}
+                : new int[]{bestTile / width, bestTile % width};
+        int score = bestTile < 0 || visits[bestTile] == 0 ? 0
+                : (int) (wins[bestTile] * 1000 / visits[bestTile]);
+        return new SearchResult(move, score, new SearchStats(playouts, 0, 0,
+                0, new long[0], 0, 0, 0, lastNanos), complete);
+    }
+
+    /**
+     * Ends the search at its next clock check, returning the move visited
+     * most often so far.
+     */
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+
+    private long playoutShare(int thread) {
+        if (playoutBudget <= 0) {
+            return Long.MAX_VALUE;
+        }
+        long share = playoutBudget / threads;
+        return thread < playoutBudget % threads ? share + 1 : share;
+    }
+
+    private static void await(Future<?> helper) {
+        try {
+            helper.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+    }
+
+    private void search(Tree tree, Board board, long deadline,
+            long budget, BooleanSupplier stopRequested) {
+        Board copy = new Board(board);
+        reuseOrReplaceRoot(tree, copy);
+        int tiles = copy.getWidth() * copy.getHeight();
+        if (tree.blanks.length < tiles) {
+            tree.blanks = new int[tiles];
+            tree.path = new Node[tiles + 1];
+        }
+        tree.playouts = 0;
+        while (tree.playouts < budget && tree.root.moves.length > 0) {
+            iterate(tree, copy);
+            tree.playouts++;
+            if ((tree.playouts & CLOCK_CHECK_MASK) == 0
+                    && (stopped || stopRequested.getAsBoolean()
+                            || System.nanoTime() - deadline > 0)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Keep the tree if the board is the previous root's position, or that
+     * position after a move by X and a reply by O which are both in the tree.
+     */
+    private static void reuseOrReplaceRoot(Tree tree, Board board) {
+        Node reused = null;
+        Board previous = tree.rootBoard;
+        if (previous != null && previous.getWidth() == board.getWidth()
+                && previous.getHeight() == board.getHeight()
+                && previous.getWinLength() == board.getWinLength()) {
+            int width = board.getWidth();
+            int crossTile = -1, noughtTile = -1, changed = 0;
+            for (int tile = 0; tile < width * board.getHeight(); tile++) {
+                Mark before = previous.getMarkAt(tile / width, tile % width);
+                Mark now = board.getMarkAt(tile / width, tile % width);
+                if (before == now) {
+                    continue;
+                }
+                changed++;
+                if (before != BLANK) {
+                    changed = Integer.MAX_VALUE;
+                    break;
+                } else if (now == X) {
+                    crossTile = tile;
+                } else {
+                    noughtTile = tile;
+                }
+            }
+            if (changed == 0) {
+                reused = tree.root;
+            } else if (changed == 2 && crossTile >= 0 && noughtTile >= 0) {
+                Node child = tree.root.child(crossTile);
+                reused = child == null ? null : child.child(noughtTile);
+            }
+        }
+        tree.root = reused != null ? reused : new Node(-1, board, tree.random);
+        tree.rootBoard = new Board(board);
+    }
+
+    /**
+     * Select a path down the tree with UCT, add a node to it, play a random
+     * game from there and record the result along the path.
+     */
+    private static void iterate(Tree tree, Board board) {
+        int width = board.getWidth();
+        int startPly = board.getSearchPly();
+        Node node = tree.root;
+        Node[] path = tree.path;
+        int length = 0;
+        path[length++] = node;
+        boolean crossTurn = true;
+
+        while (node.expanded == node.moves.length && node.expanded > 0) {
+            node = select(node);
+            board.makeMove(node.tile / width, node.tile % width,
+                    crossTurn ? X : O);
+            crossTurn = !crossTurn;
+            path[length++] = node;
+        }
+        if (node.expanded < node.moves.length) {
+            int tile = node.moves[node.expanded];
+            board.makeMove(tile / width, tile % width, crossTurn ? X : O);
+            crossTurn = !crossTurn;
+            Node child = new Node(tile, board, tree.random);
+            node.children[node.expanded++] = child;
+            node = child;
+            path[length++] = node;
+        }
+
+        Mark winner = playout(board, crossTurn, tree);
+        // The node at an odd index of the path was reached by X's move.
+        for (int i = 0; i < length; i++) {
+            Node visited = path[i];
+            visited.visits++;
+            Mark mover = i % 2 == 1 ? X : O;
+            if (winner == mover) {
+                visited.wins += 1;
+            } else if (winner == BLANK) {
+                visited.wins += 0.5;
+            }
+        }
+        while (board.getSearchPly() > startPly) {
+            board.unmakeMove();
+        }
+    }
+
+    private static Node select(Node node) {
+        double logVisits = Math.log(node.visits);
+        Node best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < node.expanded; i++) {
+            Node child = node.children[i];
+            double score = child.wins / child.visits
+                    + EXPLORATION * Math.sqrt(logVisits / child.visits);
+            if (score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Play random moves until the game is over, the moves are left on the
+     * board for the caller to undo.
+     * @return Mark of the winner or BLANK for a draw
+     */
+    private static Mark playout(Board board, boolean crossTurn, Tree tree) {
+        int width = board.getWidth();
+        int tiles = width * board.getHeight();
+        int[] blanks = tree.blanks;
+        int count = 0;
+        for (int tile = 0; tile < tiles; tile++) {
+            if (!board.isTileMarked(tile / width, tile % width)) {
+                blanks[count++] = tile;
+            }
+        }
+        while (board.getSearchWinner() == BLANK && count > 0) {
+            int pick = tree.random.nextInt(count);
+            int tile = blanks[pick];
+            blanks[pick] = blanks[--count];
+            board.makeMove(tile / width, tile % width, crossTurn ? X : O);
+            crossTurn = !crossTurn;
+        }
+        return board.getSearchWinner();
+    }
+
+    /**
+     * @return Number of random games played by the last search, over all
+     * threads
+     */
+    public long getPlayouts() {
+        return lastPlayouts;
+    }
+
+    /**
+     * @return Random games played per second by the last search, over all
+     * threads
+     */
+    public double getPlayoutsPerSecond() {
+        return lastNanos == 0 ? 0 : lastPlayouts * 1e9 / lastNanos;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Forget the trees so the next search starts from nothing.
+     */
+    @Override
+    public void clear() {
+        for (Tree tree : trees) {
+            tree.root = null;
+            tree.rootBoard = null;
+        }
+    }
+
+    /**
+     * Stop the helper threads, the searcher cannot be used afterwards.
+     */
+    @Override
+    public void shutdown() {
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package ai;
+
+import game.Position;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Best moves already found, shared by every engine created with
+ * {@link EngineRegistry#create(String, EngineSettings, MoveCache)} so a
+ * position searched in one game is answered without a search in the next,
+ * whichever thread plays it.
+ * <p>
+ * Entries are keyed by the engine's name and settings and the position in its
+ * canonical orientation, so rotations and reflections of a position share an
+ * entry, and hold the move in that orientation along with its score. The
+ * cache is split into segments, each owning a LinkedHashMap in access order
+ * behind its own lock, and a segment which is full evicts its least recently
+ * used entry. The memory budget is an estimate of {@link #ENTRY_BYTES} for
+ * each entry.
+ * <p>
+ * A cache can be written to a file with {@link #save(Path)}, for example when
+ * a server stops, and read back with {@link #load(Path)} when it starts.
+ *
+ * @author DavidHurst
+ */
+public final class MoveCache {
+
+    /**
+     * Estimated heap used by one entry: its map node, key, position and
+     * boxed move.
+     */
+    public static final int ENTRY_BYTES = 160;
+
+    private static final int SEGMENTS = 16;
+    private static final int MAGIC = 0x54544d43;
+    private static final int VERSION = 1;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int capacity;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * The engine and canonical position of an entry.
+     */
+    private static final class Key {
+
+        final String engine;
+        final Position position;
+
+        Key(String engine, Position position) {
+            this.engine = engine;
+            this.position = position;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return engine.equals(key.engine) && position.equals(key.position);
+        }
+
+        @Override
+        public int hashCode() {
+            return engine.hashCode() * 31 + position.hashCode();
+        }
+    }
+
+    /**
+     * Entries in access order, the eldest evicted once the segment is full.
+     * The segment is the lock of its entries.
+     */
+    private static final class Segment {
+
+        final Map<Key, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+        final int capacity;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    /**
+     * @param maxBytes Memory budget of the cache
+     */
+    public MoveCache(long maxBytes) {
+        int perSegment = (int) Math.min(Integer.MAX_VALUE,
+                Math.max(1, maxBytes / ENTRY_BYTES / SEGMENTS));
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        capacity = perSegment * SEGMENTS;
+    }
+
+    private Segment segmentOf(Key key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * @param engine Name and settings of the engine which searched the
+     * position
+     * @param canonical Position in its canonical orientation
+     * @return The tile of the move in the canonical orientation in the high
+     * int and its score in the low int, or null if the position is not cached
+     */
+    Long get(String engine, Position canonical) {
+        Key key = new Key(engine, canonical);
+        Segment segment = segmentOf(key);
+        Long entry;
+        synchronized (segment) {
+            entry = segment.entries.get(key);
+        }
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * @param engine Name and settings of the engine which searched the
+     * position
+     * @param canonical Position in its canonical orientation
+     * @param tile Tile of the move in the canonical orientation
+     * @param score Score of the move
+     */
+    void put(String engine, Position canonical, int tile, int score) {
+        Key key = new Key(engine, canonical);
+        Segment segment = segmentOf(key);
+        synchronized (segment) {
+            segment.entries.put(key,
+                    (long) tile << 32 | (score & 0xFFFFFFFFL));
+            if (segment.entries.size() > segment.capacity) {
+                Iterator<Key> eldest = segment.entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Write every entry to a file, each segment's least recently used first
+     * so that loading the file keeps their order.
+     *
+     * @param file File to write the cache to
+     * @throws IOException If the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        List<Map.Entry<Key, Long>> entries = new ArrayList<>();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Map.Entry<Key, Long> entry : segment.entries.entrySet()) {
+                    entries.add(Map.entry(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<Key, Long> entry : entries) {
+                Position position = entry.getKey().position;
+                out.writeUTF(entry.getKey().engine);
+                out.writeByte(position.getWidth());
+                out.writeByte(position.getHeight());
+                out.writeByte(position.getWinLength());
+                out.writeLong(position.getXBits());
+                out.writeLong(position.getOBits());
+                out.writeLong(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Add the entries of a file written by {@link #save(Path)}, which count
+     * as neither hits nor misses. Entries beyond the budget are evicted as
+     * they would be if searched.
+     *
+     * @param file File to read the entries from
+     * @return Number of entries read
+     * @throws IOException If the file cannot be read or is not a cache
+     */
+    public int load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a move cache");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String engine = in.readUTF();
+                int width = in.readUnsignedByte();
+                int height = in.readUnsignedByte();
+                int winLength = in.readUnsignedByte();
+                Position position;
+                try {
+                    position = Position.of(in.readLong(), in.readLong(),
+                            width, height, winLength);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + " holds an invalid position",
+                            e);
+                }
+                long move = in.readLong();
+                put(engine, position, (int) (move >> 32), (int) move);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Remove every entry, leaving the counts as they are.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+            }
+        }
+    }
+
+    /**
+     * @return Number of entries cached
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return Number of entries the memory budget holds
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of entries removed to make room for newer ones
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return Fraction of lookups answered by the cache
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cache-size=%d cache-capacity=%d cache-hits=%d "
+                + "cache-misses=%d cache-evictions=%d cache-hit-rate=%.3f",
+                size(), capacity, getHits(), getMisses(), getEvictions(),
+                getHitRate());
+    }
+}
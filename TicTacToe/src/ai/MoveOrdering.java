@@ -0,0 +1,135 @@
+package ai;
+
+import game.WinLines;
+
+/**
+ * Orders the moves at a node so the ones most likely to cause an alpha-beta
+ * cutoff are searched first. The best move stored in the transposition table
+ * for the position comes first, then the killer moves which caused a cutoff
+ * at the same ply elsewhere in the tree, then the remaining moves by the
+ * number of winning lines through their tile, which favours the centre, with
+ * ties optionally broken by how often the move has caused cutoffs (the history
+ * heuristic).
+ * <p>
+ * The history heuristic is off by default: reordering moves by history makes
+ * the search reach fewer positions by transposition and on 4x4 boards it
+ * visited more nodes than the static order alone.
+ * <p>
+ * One instance belongs to each search as the killer moves and history are
+ * learnt from the cutoffs in that search.
+ *
+ * @author DavidHurst
+ */
+final class MoveOrdering {
+
+    private static final int TABLE_MOVE_SCORE = 1 << 30;
+    private static final int KILLER_SCORE = 1 << 29;
+    private static final int HISTORY_BITS = 20;
+    private static final int HISTORY_LIMIT = (1 << HISTORY_BITS) - 1;
+    private static final int KILLERS_PER_PLY = 2;
+
+    private final boolean useHistory;
+
+    private int[][] killers = new int[0][];
+    private int[][] history = new int[2][0];
+    private int[] scores = new int[0];
+
+    MoveOrdering() {
+        this(false);
+    }
+
+    /**
+     * @param useHistory Whether to break ties between moves with the history
+     * heuristic
+     */
+    MoveOrdering(boolean useHistory) {
+        this.useHistory = useHistory;
+    }
+
+    /**
+     * Sort the moves into the order they should be searched in.
+     *
+     * @param moves Tile indices of the legal moves
+     * @param count Number of moves
+     * @param ply Number of moves made since the root of the search
+     * @param isMax Whether the maximising player is to move
+     * @param tableMove Tile of the transposition table's best move or -1
+     * @param lines Winning lines of the board
+     */
+    void sort(int[] moves, int count, int ply, boolean isMax, int tableMove,
+            WinLines lines) {
+        ensureCapacity(ply, moves.length);
+        int[] sideHistory = history[isMax ? 0 : 1];
+        int[] plyKillers = killers[ply];
+        for (int i = 0; i < count; i++) {
+            int tile = moves[i];
+            int score;
+            if (tile == tableMove) {
+                score = TABLE_MOVE_SCORE;
+            } else if (tile == plyKillers[0]) {
+                score = KILLER_SCORE;
+            } else if (tile == plyKillers[1]) {
+                score = KILLER_SCORE - 1;
+            } else {
+                score = lines.countLinesThrough(tile) << HISTORY_BITS;
+                if (useHistory) {
+                    score += sideHistory[tile];
+                }
+            }
+            // Insertion sort keeps equal moves in row-major order.
+            int j = i;
+            while (j > 0 && scores[j - 1] < score) {
+                scores[j] = scores[j - 1];
+                moves[j] = moves[j - 1];
+                j--;
+            }
+            scores[j] = score;
+            moves[j] = tile;
+        }
+    }
+
+    /**
+     * Record that a move caused a cutoff.
+     *
+     * @param tile Tile of the move
+     * @param ply Number of moves made since the root of the search
+     * @param depth Remaining depth of the search below the node
+     * @param isMax Whether the maximising player made the move
+     */
+    void recordCutoff(int tile, int ply, int depth, boolean isMax) {
+        int[] plyKillers = killers[ply];
+        if (plyKillers[0] != tile) {
+            plyKillers[1] = plyKillers[0];
+            plyKillers[0] = tile;
+        }
+        if (!useHistory) {
+            return;
+        }
+        int[] sideHistory = history[isMax ? 0 : 1];
+        sideHistory[tile] += depth * depth;
+        if (sideHistory[tile] > HISTORY_LIMIT) {
+            for (int[] side : history) {
+                for (int i = 0; i < side.length; i++) {
+                    side[i] >>= 1;
+                }
+            }
+        }
+    }
+
+    private void ensureCapacity(int ply, int tiles) {
+        if (history[0].length < tiles) {
+            history = new int[2][tiles];
+            scores = new int[tiles];
+        }
+        if (killers.length <= ply) {
+            int[][] grown = new int[Math.max(ply + 1, tiles + 1)][];
+            System.arraycopy(killers, 0, grown, 0, killers.length);
+            for (int i = killers.length; i < grown.length; i++) {
+                grown[i] = new int[KILLERS_PER_PLY];
+                grown[i][0] = -1;
+                grown[i][1] = -1;
+            }
+            killers = grown;
+        }
+    }
+}
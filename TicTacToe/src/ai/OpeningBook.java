@@ -0,0 +1,285 @@
+package ai;
+
+import game.Board;
+import game.Mark;
+import game.Symmetry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static game.Mark.*;
+
+/**
+ * X's best move in every position of the first few moves of a game, searched
+ * ahead of time by MiniMaxCombined so the widest searches of a game need not
+ * be made while it is played.
+ * <p>
+ * Positions are stored once per group of rotations and reflections, by their
+ * canonical hash, with the move in the canonical orientation. A book file
+ * holds a header followed by the hashes in ascending order, each with the
+ * tile of its move, and is read into two arrays which are binary searched.
+ * Both the positions where X is to move in a game and those where O is, with
+ * the marks swapped as the engines search them, are stored.
+ * <p>
+ * Usage: {@code java -cp TicTacToe/target/classes ai.OpeningBook --width 4
+ * --plies 3 --output book-4x4.bin}, with {@code --height} and
+ * {@code --win-length} for other boards and {@code --budget millis} to search
+ * each position with a time budget rather than to MiniMaxCombined's maximum
+ * depth.
+ *
+ * @author DavidHurst
+ */
+public final class OpeningBook {
+
+    private static final int MAGIC = 0x54544f42;
+    private static final int VERSION = 1;
+
+    private final int width;
+    private final int height;
+    private final int winLength;
+    private final int plies;
+    private final long[] keys;
+    private final byte[] moves;
+
+    private OpeningBook(int width, int height, int winLength, int plies,
+            long[] keys, byte[] moves) {
+        this.width = width;
+        this.height = height;
+        this.winLength = winLength;
+        this.plies = plies;
+        this.keys = keys;
+        this.moves = moves;
+    }
+
+    /**
+     * Read a book written by {@link #generate(Board, int, long, Path)}.
+     *
+     * @param file Book to read
+     * @return The book
+     * @throws IOException If the file cannot be read or is not a book
+     */
+    public static OpeningBook load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not an opening book");
+            }
+            int width = in.readInt();
+            int height = in.readInt();
+            int winLength = in.readInt();
+            int plies = in.readInt();
+            int count = in.readInt();
+            long[] keys = new long[count];
+            byte[] moves = new byte[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = in.readLong();
+                moves[i] = in.readByte();
+            }
+            return new OpeningBook(width, height, winLength, plies, keys,
+                    moves);
+        }
+    }
+
+    /**
+     * Search every position reachable in fewer than the given number of moves
+     * from the empty board and write the best moves to a file.
+     *
+     * @param empty Empty board of the size and win length to generate for
+     * @param plies Number of moves of a game the book covers
+     * @param budgetMillis Time to search each position for, or 0 to search
+     * to MiniMaxCombined's maximum depth
+     * @param file File to write the book to
+     * @return Number of positions in the book
+     * @throws IOException If the file cannot be written
+     */
+    public static int generate(Board empty, int plies, long budgetMillis,
+            Path file) throws IOException {
+        int tiles = empty.getWidth() * empty.getHeight();
+        if (tiles > 256) {
+            throw new IllegalArgumentException(
+                    "Moves of boards over 256 tiles do not fit in a byte");
+        }
+        Map<Long, Integer> found = new TreeMap<>();
+        collect(new Board(empty), plies, budgetMillis, found);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(empty.getWidth());
+            out.writeInt(empty.getHeight());
+            out.writeInt(empty.getWinLength());
+            out.writeInt(plies);
+            out.writeInt(found.size());
+            // TreeMap iterates in the ascending order lookups search in.
+            for (Map.Entry<Long, Integer> entry : found.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeByte(entry.getValue());
+            }
+        }
+        return found.size();
+    }
+
+    private static void collect(Board board, int plies, long budgetMillis,
+            Map<Long, Integer> found) {
+        int ply = board.getSearchPly();
+        if (ply >= plies || board.getSearchWinner() != BLANK
+                || !board.anyMovesAvailable()) {
+            return;
+        }
+        boolean crossTurn = ply % 2 == 0;
+        Board searched = crossTurn ? board : swapMarks(board);
+        long key = searched.getCanonicalHash();
+        if (found.containsKey(key)) {
+            // An equivalent position has been searched along with the
+            // positions which follow it.
+            return;
+        }
+        int[] move = budgetMillis > 0
+                ? MiniMaxCombined.getBestMove(searched, budgetMillis)
+                : MiniMaxCombined.getBestMove(searched);
+        int width = board.getWidth();
+        found.put(key, searched.getSymmetry().transformTile(
+                searched.getCanonicalTransform(), move[0] * width + move[1]));
+
+        for (int row = 0; row < board.getHeight(); row++) {
+            for (int col = 0; col < width; col++) {
+                if (!board.isTileMarked(row, col)) {
+                    board.makeMove(row, col, crossTurn ? X : O);
+                    collect(board, plies, budgetMillis, found);
+                    board.unmakeMove();
+                }
+            }
+        }
+    }
+
+    private static Board swapMarks(Board board) {
+        Board swapped = new Board(board.getWidth(), board.getHeight(),
+                board.getWinLength());
+        for (int row = 0; row < board.getHeight(); row++) {
+            for (int col = 0; col < board.getWidth(); col++) {
+                Mark mark = board.getMarkAt(row, col);
+                if (mark.isMarked()) {
+                    swapped.makeMove(row, col, mark == X ? O : X);
+                }
+            }
+        }
+        return swapped;
+    }
+
+    /**
+     * @param board Board to check
+     * @return true if the book holds positions of the board's size and win
+     * length
+     */
+    public boolean covers(Board board) {
+        return board.getWidth() == width && board.getHeight() == height
+                && board.getWinLength() == winLength;
+    }
+
+    /**
+     * Look up X's move on the board.
+     *
+     * @param board Board to find a move on
+     * @return Coordinates of the book move or null if the position is not in
+     * the book
+     */
+    public int[] getBestMove(Board board) {
+        if (!covers(board)) {
+            return null;
+        }
+        int index = Arrays.binarySearch(keys, board.getCanonicalHash());
+        if (index < 0) {
+            return null;
+        }
+        Symmetry symmetry = board.getSymmetry();
+        int tile = symmetry.transformTile(
+                symmetry.inverse(board.getCanonicalTransform()),
+                moves[index] & 0xFF);
+        int row = tile / width;
+        int col = tile % width;
+        // A position outside the book may share a hash with one in it.
+        if (board.isTileMarked(row, col)) {
+            return null;
+        }
+        return new int[]{row, col};
+    }
+
+    /**
+     * @return Number of positions in the book
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    public int getPlies() {
+        return plies;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int width = -1, height = -1, winLength = -1, plies = 2;
+        long budgetMillis = 0;
+        Path output = null;
+        String usage = "Usage: --width n [--height n] "
+                + "[--win-length n] [--plies n] [--budget millis] "
+                + "--output file";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for "
+                            + args[i]);
+                }
+                switch (args[i++]) {
+                    case "--width":
+                        width = Integer.parseInt(value);
+                        break;
+                    case "--height":
+                        height = Integer.parseInt(value);
+                        break;
+                    case "--win-length":
+                        winLength = Integer.parseInt(value);
+                        break;
+                    case "--plies":
+                        plies = Integer.parseInt(value);
+                        break;
+                    case "--budget":
+                        budgetMillis = Long.parseLong(value);
+                        break;
+                    case "--output":
+                        output = Path.of(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option "
+                                + args[i - 1]);
+                }
+            }
+            if (width < 1 || output == null) {
+                throw new IllegalArgumentException("Missing --width or "
+                        + "--output");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage);
+            System.exit(1);
+            return;
+        }
+        height = height < 0 ? width : height;
+        winLength = winLength < 0 ? Math.min(width, height) : winLength;
+
+        long start = System.nanoTime();
+        int positions = generate(new Board(width, height, winLength), plies,
+                budgetMillis, output);
+        System.out.printf("Searched %d positions of %dx%d, %d in a row, in"
+                + " %.1f s%n", positions, width, height, winLength,
+                (System.nanoTime() - start) / 1e9);
+    }
+}
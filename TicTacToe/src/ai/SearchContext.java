@@ -0,0 +1,258 @@
+package ai;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * State belonging to one thread's search of a game tree: the transposition
+ * table it reads and writes, which may be shared with other searches, the
+ * search options of the engine searching and counters which are private to
+ * the search.
+ *
+ * @author DavidHurst
+ */
+final class SearchContext {
+
+    /**
+     * Thrown out of a search which has been stopped, the board it was
+     * searching is left part way through the search and must be discarded.
+     */
+    static final class StoppedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private StoppedException() {
+            super("Search stopped", null, false, false);
+        }
+    }
+
+    private static final StoppedException STOPPED = new StoppedException();
+    /**
+     * The clock and the stop condition are only read every 1024 nodes.
+     */
+    private static final int CLOCK_CHECK_MASK = 1023;
+
+    final TranspositionTable table;
+    final MoveOrdering ordering;
+    final boolean linePotential;
+    long nodes, cutoffs, firstMoveCutoffs;
+    private long leafEvaluations;
+    private long[] cutoffsByMoveIndex = new long[0];
+    private int maxPly = -1;
+    private long tableProbes, tableHits, tableStores, tableOverwrites;
+    private final long startNanos = System.nanoTime();
+    private int[][] moveLists = new int[0][];
+    private volatile boolean stopped;
+    private boolean abandoned;
+    private boolean hasDeadline;
+    private long deadline;
+    private BooleanSupplier stopRequested;
+
+    /**
+     * @param table Transposition table to use
+     * @param ordering Move ordering to use or null to search moves in
+     * row-major order
+     * @param linePotential Whether to value positions at the maximum depth by
+     * their open lines rather than as a draw
+     */
+    SearchContext(TranspositionTable table, MoveOrdering ordering,
+            boolean linePotential) {
+        this.table = table;
+        this.ordering = ordering;
+        this.linePotential = linePotential;
+    }
+
+    /**
+     * Look a position up in the table, counting the probe.
+     *
+     * @param key Hash of the position
+     * @return The packed entry for the position or
+     * {@link TranspositionTable#MISS}
+     */
+    long probe(long key) {
+        long entry = table.probe(key);
+        tableProbes++;
+        if (entry != TranspositionTable.MISS) {
+            tableHits++;
+        }
+        return entry;
+    }
+
+    /**
+     * Record a searched position in the table, counting the store.
+     */
+    void store(long key, int depth, int value, int flag, int move) {
+        int result = table.store(key, depth, value, flag, move);
+        if (result != TranspositionTable.NOT_STORED) {
+            tableStores++;
+            if (result == TranspositionTable.OVERWRITTEN) {
+                tableOverwrites++;
+            }
+        }
+    }
+
+    /**
+     * Retrieve the array to hold the moves of the node at the given ply, each
+     * ply has its own so that generating moves does not allocate.
+     *
+     * @param ply Number of moves made since the root of the search
+     * @param tiles Number of tiles on the board
+     * @return Array of at least as many elements as there are tiles
+     */
+    int[] moveList(int ply, int tiles) {
+        if (moveLists.length <= ply) {
+            int[][] grown = new int[Math.max(ply + 1, tiles + 1)][];
+            System.arraycopy(moveLists, 0, grown, 0, moveLists.length);
+            moveLists = grown;
+        }
+        if (moveLists[ply] == null || moveLists[ply].length < tiles) {
+            moveLists[ply] = new int[tiles];
+        }
+        return moveLists[ply];
+    }
+
+    /**
+     * Count an alpha-beta cutoff.
+     *
+     * @param index Position of the move which caused it in the order the 
+     * moves were searched in
+     */
+    void recordCutoff(int index) {
+        cutoffs++;
+        if (index == 0) {
+            firstMoveCutoffs++;
+        }
+        if (SearchStats.DETAILED) {
+            if (index >= cutoffsByMoveIndex.length) {
+                cutoffsByMoveIndex = Arrays.copyOf(cutoffsByMoveIndex,
+                        index + 1);
+            }
+            cutoffsByMoveIndex[index]++;
+        }
+    }
+
+    /**
+     * Count a node valued without searching it further, only when the
+     * detailed statistics are on.
+     *
+     * @param ply The board's search ply at the node
+     */
+    void recordLeaf(int ply) {
+        if (SearchStats.DETAILED) {
+            leafEvaluations++;
+            maxPly = Math.max(maxPly, ply);
+        }
+    }
+
+    /**
+     * Gather the statistics of the search so far and, when the detailed
+     * statistics are on, add them to the {@link SearchMetrics} totals.
+     *
+     * @param rootPly The board's search ply at the root of the search
+     * @return Statistics of the search
+     */
+    SearchStats finish(int rootPly) {
+        return finishAll(List.of(this), rootPly);
+    }
+
+    /**
+     * @return Fraction of cutoffs caused by the first move searched, which
+     * measures how good the move ordering is, 0 if there were no cutoffs
+     */
+    double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    /**
+     * Gather the statistics of searches made at once by several threads
+     * sharing a table as those of one search, and add them to the
+     * {@link SearchMetrics} totals when the detailed statistics are on.
+     *
+     * @param contexts Search states of the threads, the first created first
+     * @param rootPly The board's search ply at the root of the search
+     * @return Statistics of the searches together
+     */
+    static SearchStats finishAll(List<SearchContext> contexts, int rootPly) {
+        SearchContext first = contexts.get(0);
+        long nodes = 0, leaves = 0, cutoffs = 0, firstMoveCutoffs = 0;
+        long probes = 0, hits = 0;
+        long[] byIndex = new long[0];
+        int maxPly = -1;
+        for (SearchContext context : contexts) {
+            nodes += context.nodes;
+            leaves += context.leafEvaluations;
+            cutoffs += context.cutoffs;
+            firstMoveCutoffs += context.firstMoveCutoffs;
+            long[] counts = context.cutoffsByMoveIndex;
+            if (counts.length > byIndex.length) {
+                byIndex = Arrays.copyOf(byIndex, counts.length);
+            }
+            for (int i = 0; i < counts.length; i++) {
+                byIndex[i] += counts[i];
+            }
+            maxPly = Math.max(maxPly, context.maxPly);
+            probes += context.tableProbes;
+            hits += context.tableHits;
+            context.table.addCounts(context.tableProbes, context.tableHits,
+                    context.tableStores, context.tableOverwrites);
+        }
+        SearchStats stats = new SearchStats(nodes, leaves, cutoffs,
+                firstMoveCutoffs, byIndex, Math.max(0, maxPly - rootPly),
+                probes, hits, System.nanoTime() - first.startNanos);
+        if (SearchStats.DETAILED) {
+            SearchMetrics.getInstance().record(stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Called on entering every node, abandons the search if it has been
+     * stopped or has run past its deadline.
+     */
+    void visitNode() {
+        nodes++;
+        if (stopped || ((nodes & CLOCK_CHECK_MASK) == 0
+                && ((hasDeadline && System.nanoTime() - deadline > 0)
+                        || (stopRequested != null
+                                && stopRequested.getAsBoolean())))) {
+            abandoned = true;
+            throw STOPPED;
+        }
+    }
+
+    /**
+     * Stop the search once the given time has passed.
+     *
+     * @param nanoTime Deadline in terms of {@link System#nanoTime()}
+     */
+    void setDeadline(long nanoTime) {
+        deadline = nanoTime;
+        hasDeadline = true;
+    }
+
+    /**
+     * Stop the search once the condition holds.
+     *
+     * @param condition Belongs to this search alone
+     */
+    void setStopCondition(BooleanSupplier condition) {
+        stopRequested = condition;
+    }
+
+    /**
+     * @return true if part of the search was abandoned because it was
+     * stopped or ran past its deadline
+     */
+    boolean wasAbandoned() {
+        return abandoned;
+    }
+
+    /**
+     * Ask the search to stop, it will throw {@link StoppedException} from the
+     * next node it visits.
+     */
+    void stop() {
+        stopped = true;
+    }
+}
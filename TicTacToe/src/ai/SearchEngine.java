@@ -0,0 +1,102 @@
+package ai;
+
+import game.Board;
+import game.Position;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * An engine which finds X's best move, created with its own settings and
+ * state by {@link EngineRegistry} so that engines with different settings can
+ * search at once in one JVM. An engine keeps state such as its transposition
+ * table between searches, so it must only be used by one thread at a time
+ * apart from {@link #stop()}.
+ *
+ * @author DavidHurst
+ */
+public interface SearchEngine {
+
+    /**
+     * @return Name the engine is registered under
+     */
+    String getName();
+
+    /**
+     * Search the board for X's best move.
+     *
+     * @param board Board to evaluate, X is to move
+     * @return Best move, its score and the statistics of the search
+     */
+    SearchResult search(Board board);
+
+    /**
+     * Search a new board holding the position, leaving the position free to
+     * be searched by other engines on other threads at the same time.
+     *
+     * @param position Position to evaluate, X is to move
+     * @return Best move, its score and the statistics of the search
+     */
+    default SearchResult search(Position position) {
+        return search(position.toBoard());
+    }
+
+    /**
+     * As {@link #search(Position)}, also returning as soon as it can once the
+     * condition holds. The condition belongs to this one search, so unlike
+     * {@link #stop()} it cannot miss a search which has not started yet or
+     * reach the engine's next search. Engines which cannot stop early ignore
+     * it, a search stopped before it has found any move throws an unchecked
+     * exception.
+     *
+     * @param position Position to evaluate, X is to move
+     * @param stopRequested Checked now and then by the searching thread
+     * @return Best move, its score and the statistics of the search
+     */
+    default SearchResult search(Position position,
+            BooleanSupplier stopRequested) {
+        return search(position);
+    }
+
+    /**
+     * As {@link #search(Board)}, also reporting the best move found so far by
+     * engines which deepen their search.
+     *
+     * @param board Board to evaluate, X is to move
+     * @param onProgress Given each improved best move on the searching thread
+     * @return Best move, its score and the statistics of the search
+     */
+    default SearchResult search(Board board, Consumer<int[]> onProgress) {
+        return search(board);
+    }
+
+    /**
+     * @param board Board to evaluate, X is to move
+     * @return Coordinates of best move
+     */
+    default int[] getBestMove(Board board) {
+        return search(board).getMove();
+    }
+
+    /**
+     * Ask the search running on another thread, if there is one, to return
+     * as soon as it can. Engines which cannot stop early ignore this, a
+     * search stopped before it has found any move throws an unchecked
+     * exception.
+     */
+    default void stop() {
+    }
+
+    /**
+     * Forget everything learned by earlier searches, so the next search
+     * starts as the first did.
+     */
+    default void clear() {
+    }
+
+    /**
+     * Release the engine's threads, it cannot be used afterwards.
+     */
+    default void shutdown() {
+    }
+}
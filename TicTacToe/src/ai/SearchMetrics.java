@@ -0,0 +1,140 @@
+package ai;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Running totals of the statistics of every search made by MiniMaxCombined,
+ * MiniMaxPvs and AsyncMoveSearch, which can be published as an MBean to be
+ * watched with JConsole or any other JMX client. Searches are only added
+ * when the detailed statistics are on, see {@link SearchStats#isDetailed()},
+ * and each search is added once when it finishes rather than counted node by
+ * node so searches on several threads may add to the totals at once.
+ *
+ * @author DavidHurst
+ */
+public final class SearchMetrics implements SearchMetricsMBean {
+
+    /**
+     * Name the totals are registered under.
+     */
+    public static final String OBJECT_NAME = "ai:type=SearchMetrics";
+
+    private static final SearchMetrics INSTANCE = new SearchMetrics();
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder leafEvaluations = new LongAdder();
+    private final LongAdder cutoffs = new LongAdder();
+    private final LongAdder firstMoveCutoffs = new LongAdder();
+    private final LongAdder tableProbes = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+
+    private SearchMetrics() {
+    }
+
+    public static SearchMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register the totals with the platform MBean server, doing nothing if
+     * they already are.
+     */
+    public static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register "
+                    + OBJECT_NAME, e);
+        }
+    }
+
+    void record(SearchStats stats) {
+        searches.increment();
+        nodes.add(stats.getNodes());
+        leafEvaluations.add(stats.getLeafEvaluations());
+        cutoffs.add(stats.getCutoffs());
+        firstMoveCutoffs.add(stats.getFirstMoveCutoffs());
+        tableProbes.add(stats.getTableProbes());
+        tableHits.add(stats.getTableHits());
+        searchNanos.add(stats.getElapsedNanos());
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    @Override
+    public long getLeafEvaluations() {
+        return leafEvaluations.sum();
+    }
+
+    @Override
+    public long getCutoffs() {
+        return cutoffs.sum();
+    }
+
+    @Override
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs.sum();
+    }
+
+    @Override
+    public long getTableProbes() {
+        return tableProbes.sum();
+    }
+
+    @Override
+    public long getTableHits() {
+        return tableHits.sum();
+    }
+
+    @Override
+    public long getSearchMillis() {
+        return searchNanos.sum() / 1_000_000;
+    }
+
+    /**
+     * @return Nodes per second of search time, summed over threads searching
+     * at once
+     */
+    @Override
+    public double getNodesPerSecond() {
+        long nanos = searchNanos.sum();
+        return nanos == 0 ? 0 : nodes.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder total : new LongAdder[]{searches, nodes,
+            leafEvaluations, cutoffs, firstMoveCutoffs, tableProbes,
+            tableHits, searchNanos}) {
+            total.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SearchMetrics[searches=%d, nodes=%d, "
+                + "leaves=%d, cutoffs=%d, first move cutoffs=%d, table "
+                + "hits=%d/%d, %d ms, %.0f nodes/s]", getSearches(),
+                getNodes(), getLeafEvaluations(), getCutoffs(),
+                getFirstMoveCutoffs(), getTableHits(), getTableProbes(),
+                getSearchMillis(), getNodesPerSecond());
+    }
+}
@@ -0,0 +1,33 @@
+package ai;
+
+/**
+ * Management interface of {@link SearchMetrics}, the running totals of every
+ * search published over JMX.
+ *
+ * @author DavidHurst
+ */
+public interface SearchMetricsMBean {
+
+    long getSearches();
+
+    long getNodes();
+
+    long getLeafEvaluations();
+
+    long getCutoffs();
+
+    long getFirstMoveCutoffs();
+
+    long getTableProbes();
+
+    long getTableHits();
+
+    long getSearchMillis();
+
+    double getNodesPerSecond();
+
+    /**
+     * Set every total back to 0.
+     */
+    void reset();
+}
@@ -0,0 +1,71 @@
+package ai;
+
+/**
+ * The move chosen by a search along with its score and the statistics of the
+ * search which chose it.
+ *
+ * @author DavidHurst
+ */
+public final class SearchResult {
+
+    private final int[] move;
+    private final int score;
+    private final SearchStats stats;
+    private final boolean complete;
+
+    SearchResult(int[] move, int score, SearchStats stats) {
+        this(move, score, stats, true);
+    }
+
+    /**
+     * @param complete Whether the search ran to its full depth or budget
+     * rather than being stopped or running out of time part way
+     */
+    SearchResult(int[] move, int score, SearchStats stats,
+            boolean complete) {
+        this.move = move;
+        this.score = score;
+        this.stats = stats;
+        this.complete = complete;
+    }
+
+    /**
+     * @param found Row and column of the move followed by its score
+     * @param context State of the search which found the move
+     * @param rootPly The board's search ply at the root of the search
+     * @return The result of the search
+     */
+    static SearchResult of(int[] found, SearchContext context, int rootPly) {
+        return new SearchResult(new int[]{found[0], found[1]}, found[2],
+                context.finish(rootPly), !context.wasAbandoned());
+    }
+
+    /**
+     * @return Coordinates of the best move
+     */
+    public int[] getMove() {
+        return move;
+    }
+
+    /**
+     * @return Value of the move for X on the engine's own scale, where the
+     * minimax engines value a win above 0 and a loss below, 0 if the move was
+     * looked up rather than searched
+     */
+    public int getScore() {
+        return score;
+    }
+
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return false if the search was stopped or ran out of time before
+     * reaching its full depth or budget, so the move is that of a shallower
+     * search and should not be kept in place of a full one
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+}
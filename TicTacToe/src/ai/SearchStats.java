@@ -0,0 +1,133 @@
+package ai;
+
+import java.util.Arrays;
+
+/**
+ * What a single search did: how many nodes it visited, how many it evaluated
+ * as leaves, where its cutoffs came from, how deep it went and how long it
+ * took.
+ * <p>
+ * Nodes, cutoffs, table lookups and time are always counted. Leaf
+ * evaluations, the maximum depth and the cutoffs by move index are counted by
+ * hooks on the search's hot path which only run when the JVM is started with
+ * {@code -Dai.searchStats=true}. The setting is read into a constant so when
+ * it is off the JIT compiler removes the hooks and they cost nothing.
+ *
+ * @author DavidHurst
+ */
+public final class SearchStats {
+
+    /**
+     * Whether the detailed counters are kept, fixed for the life of the JVM.
+     */
+    static final boolean DETAILED = Boolean.getBoolean("ai.searchStats");
+
+    private final long nodes;
+    private final long leafEvaluations;
+    private final long cutoffs;
+    private final long firstMoveCutoffs;
+    private final long[] cutoffsByMoveIndex;
+    private final int maxDepth;
+    private final long tableProbes;
+    private final long tableHits;
+    private final long elapsedNanos;
+
+    SearchStats(long nodes, long leafEvaluations, long cutoffs,
+            long firstMoveCutoffs, long[] cutoffsByMoveIndex, int maxDepth,
+            long tableProbes, long tableHits, long elapsedNanos) {
+        this.nodes = nodes;
+        this.leafEvaluations = leafEvaluations;
+        this.cutoffs = cutoffs;
+        this.firstMoveCutoffs = firstMoveCutoffs;
+        this.cutoffsByMoveIndex = cutoffsByMoveIndex;
+        this.maxDepth = maxDepth;
+        this.tableProbes = tableProbes;
+        this.tableHits = tableHits;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return true if the JVM was started with {@code -Dai.searchStats=true}
+     * so the detailed counters are kept
+     */
+    public static boolean isDetailed() {
+        return DETAILED;
+    }
+
+    /**
+     * @return Nodes visited, including the positions after each root move
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return Nodes valued without searching further because the game was
+     * over or the maximum depth was reached, 0 unless detailed
+     */
+    public long getLeafEvaluations() {
+        return leafEvaluations;
+    }
+
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * @return Cutoffs counted by the position of the move which caused them
+     * in the order the moves were searched in, empty unless detailed
+     */
+    public long[] getCutoffsByMoveIndex() {
+        return cutoffsByMoveIndex.clone();
+    }
+
+    /**
+     * @return Fraction of cutoffs caused by the first move searched, 0 if
+     * there were no cutoffs
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    /**
+     * @return Greatest number of moves below the root at which a leaf was
+     * evaluated, 0 unless detailed
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return Transposition table lookups made while the search ran, which
+     * include those of other searches sharing the table
+     */
+    public long getTableProbes() {
+        return tableProbes;
+    }
+
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SearchStats[nodes=%d, leaves=%d, cutoffs=%d "
+                + "(first move %.1f%%), by move=%s, max depth=%d, table "
+                + "hits=%d/%d, %.3f ms, %.0f nodes/s]", nodes,
+                leafEvaluations, cutoffs, getFirstMoveCutoffRate() * 100,
+                Arrays.toString(cutoffsByMoveIndex), maxDepth, tableHits,
+                tableProbes, elapsedNanos / 1e6, getNodesPerSecond());
+    }
+}
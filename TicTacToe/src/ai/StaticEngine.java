@@ -0,0 +1,55 @@
+package ai;
+
+import game.Board;
+
+/**
+ * One of the engines which keep no state between searches, MiniMax,
+ * MiniMaxImproved and MiniMaxAlphaBeta, searching to a depth of its own.
+ *
+ * @author DavidHurst
+ */
+final class StaticEngine implements SearchEngine {
+
+    /**
+     * The root search of a static engine.
+     */
+    @FunctionalInterface
+    interface RootSearch {
+
+        /**
+         * @return Row and column of the best move followed by its value
+         */
+        int[] search(Board board, int depth);
+    }
+
+    private final String name;
+    private final int maxDepth;
+    private final RootSearch rootSearch;
+
+    StaticEngine(String name, int maxDepth, RootSearch rootSearch) {
+        this.name = name;
+        this.maxDepth = maxDepth;
+        this.rootSearch = rootSearch;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Only nodes and time are counted, the engine has no search state to
+     * count anything else in.
+     */
+    @Override
+    public SearchResult search(Board board) {
+        long start = System.nanoTime();
+        long before = board.getSearchMoveCount();
+        int[] found = rootSearch.search(board, maxDepth);
+        SearchStats stats = new SearchStats(
+                board.getSearchMoveCount() - before, 0, 0, 0, new long[0], 0,
+                0, 0, System.nanoTime() - start);
+        return new SearchResult(new int[]{found[0], found[1]}, found[2],
+                stats);
+    }
+}
@@ -0,0 +1,372 @@
+package ai;
+
+import game.Board;
+import game.Mark;
+import game.WinLines;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static game.Mark.*;
+
+/**
+ * The perfect-play value of every reachable position of a small board, stored
+ * in a file with one byte per position and looked up by memory-mapping the
+ * file, so a table is ready to use without reading it onto the heap.
+ * <p>
+ * A position's index is its marks read as a base 3 number, blank being 0, X 1
+ * and O 2, with tile 0 the least significant digit. Every move adds to the
+ * index, so the generator solves positions from the highest index to the
+ * lowest and the value of every position a move leads to is already known.
+ * <p>
+ * Values are from X's point of view: 0 for a draw, {@code 1 + e} for a win by
+ * X and {@code -1 - e} for a win by O, where e is the number of blank tiles
+ * left when the game is won. Faster wins and slower losses therefore score
+ * higher, as they do in {@link MiniMaxCombined}. Positions which cannot occur
+ * in a game have the value {@link #UNKNOWN}.
+ * <p>
+ * Usage: {@code java -cp TicTacToe/target/classes ai.Tablebase --width 4
+ * --output tablebase-4x4.bin}, with {@code --height} and
+ * {@code --win-length} for boards other than the square game won by a full
+ * line.
+ *
+ * @author DavidHurst
+ */
+public final class Tablebase {
+
+    /**
+     * Value of a position which cannot occur in a game.
+     */
+    public static final byte UNKNOWN = Byte.MIN_VALUE;
+    /**
+     * 3^16 positions, a 43MB file, is the largest table generated.
+     */
+    public static final int MAX_TILES = 16;
+
+    private static final int MAGIC = 0x54545442;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+
+    private final int width;
+    private final int height;
+    private final int winLength;
+    private final int[] powers;
+    private final ByteBuffer values;
+
+    private Tablebase(int width, int height, int winLength,
+            ByteBuffer values) {
+        this.width = width;
+        this.height = height;
+        this.winLength = winLength;
+        this.powers = powersOfThree(width * height);
+        this.values = values;
+    }
+
+    /**
+     * Memory-map a table written by
+     * {@link #generate(int, int, int, Path)}.
+     *
+     * @param file Table to open
+     * @return The table
+     * @throws IOException If the file cannot be read or is not a table
+     */
+    public static Tablebase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()
+                    && channel.read(header) >= 0) {
+                // Read the whole header.
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES
+                    || header.getInt() != MAGIC
+                    || header.getInt() != VERSION) {
+                throw new IOException(file + " is not a tablebase");
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            int winLength = header.getInt();
+            long positions = positions(width * height);
+            if (channel.size() != HEADER_BYTES + positions) {
+                throw new IOException(file + " is truncated");
+            }
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer values = channel.map(
+                    FileChannel.MapMode.READ_ONLY, HEADER_BYTES, positions);
+            return new Tablebase(width, height, winLength, values);
+        }
+    }
+
+    /**
+     * Solve every reachable position of a board and write the values to a
+     * file.
+     *
+     * @param width Number of columns
+     * @param height Number of rows
+     * @param winLength Number of marks in a row needed to win
+     * @param file File to write the table to
+     * @throws IOException If the file cannot be written
+     */
+    public static void generate(int width, int height, int winLength,
+            Path file) throws IOException {
+        int tiles = width * height;
+        if (tiles > MAX_TILES) {
+            throw new IllegalArgumentException("Boards of more than "
+                    + MAX_TILES + " tiles are too large for a tablebase");
+        }
+        byte[] values = solve(tiles, WinLines.of(width, height, winLength));
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height)
+                .putInt(winLength).flip();
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer buffer : new ByteBuffer[]{header,
+                    ByteBuffer.wrap(values)}) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    private static byte[] solve(int tiles, WinLines lines) {
+        int[] powers = powersOfThree(tiles);
+        int positions = (int) positions(tiles);
+        byte[] values = new byte[positions];
+        Arrays.fill(values, UNKNOWN);
+        long[] masks = new long[lines.getLines().length];
+        for (int i = 0; i < masks.length; i++) {
+            for (int tile : lines.getLines()[i]) {
+                masks[i] |= 1L << tile;
+            }
+        }
+
+        // Count down through the indices like an odometer, starting with
+        // every tile marked O, keeping the masks of each player's tiles.
+        int[] digits = new int[tiles];
+        Arrays.fill(digits, 2);
+        long xBits = 0;
+        long oBits = (1L << tiles) - 1;
+        for (int index = positions - 1; index >= 0; index--) {
+            values[index] = solvePosition(index, xBits, oBits, tiles, masks,
+                    powers, values);
+            if (index == 0) {
+                break;
+            }
+            int tile = 0;
+            while (digits[tile] == 0) {
+                digits[tile] = 2;
+                oBits |= 1L << tile;
+                tile++;
+            }
+            long bit = 1L << tile;
+            if (--digits[tile] == 1) {
+                oBits &= ~bit;
+                xBits |= bit;
+            } else {
+                xBits &= ~bit;
+            }
+        }
+        return values;
+    }
+
+    private static byte solvePosition(int index, long xBits, long oBits,
+            int tiles, long[] masks, int[] powers, byte[] values) {
+        int crosses = Long.bitCount(xBits);
+        int noughts = Long.bitCount(oBits);
+        if (crosses != noughts && crosses != noughts + 1) {
+            return UNKNOWN;
+        }
+        // A completed line is only reachable if the last mark placed is in
+        // every completed line of that player, so no line existed before it.
+        long xCommon = -1, oCommon = -1;
+        boolean xWon = false, oWon = false;
+        for (long mask : masks) {
+            if ((xBits & mask) == mask) {
+                xWon = true;
+                xCommon &= mask;
+            } else if ((oBits & mask) == mask) {
+                oWon = true;
+                oCommon &= mask;
+            }
+        }
+        int blanks = tiles - crosses - noughts;
+        if (xWon) {
+            return !oWon && crosses == noughts + 1 && xCommon != 0
+                    ? (byte) (1 + blanks) : UNKNOWN;
+        } else if (oWon) {
+            return crosses == noughts && oCommon != 0
+                    ? (byte) (-1 - blanks) : UNKNOWN;
+        } else if (blanks == 0) {
+            return 0;
+        }
+
+        boolean crossTurn = crosses == noughts;
+        int digit = crossTurn ? 1 : 2;
+        int best = crossTurn ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long marked = xBits | oBits;
+        for (int tile = 0; tile < tiles; tile++) {
+            if ((marked & (1L << tile)) == 0) {
+                int value = values[index + digit * powers[tile]];
+                best = crossTurn ? Math.max(best, value)
+                        : Math.min(best, value);
+            }
+        }
+        return (byte) best;
+    }
+
+    private static int[] powersOfThree(int tiles) {
+        int[] powers = new int[tiles];
+        int power = 1;
+        for (int tile = 0; tile < tiles; tile++) {
+            powers[tile] = power;
+            power *= 3;
+        }
+        return powers;
+    }
+
+    private static long positions(int tiles) {
+        long positions = 1;
+        for (int tile = 0; tile < tiles; tile++) {
+            positions *= 3;
+        }
+        return positions;
+    }
+
+    /**
+     * @param board Board to check
+     * @return true if the table holds positions of the board's size and win
+     * length
+     */
+    public boolean covers(Board board) {
+        return board.getWidth() == width && board.getHeight() == height
+                && board.getWinLength() == winLength;
+    }
+
+    /**
+     * Find X's best move on the board, the fastest win if there is one and
+     * otherwise a draw or the slowest loss, choosing the first in row-major
+     * order of the moves which are equally good. The board may be one with
+     * either player's marks on it as X, as the engines search it, so X moves
+     * next if it has no more marks than O.
+     *
+     * @param board Board to find a move on
+     * @return Coordinates of the best move or null if the table does not
+     * cover the board or the game on it is over
+     */
+    public int[] getBestMove(Board board) {
+        if (!covers(board)) {
+            return null;
+        }
+        int crossIndex = 0, noughtIndex = 0, crosses = 0, noughts = 0;
+        int tiles = width * height;
+        for (int tile = 0; tile < tiles; tile++) {
+            Mark mark = board.getMarkAt(tile / width, tile % width);
+            if (mark == X) {
+                crossIndex += powers[tile];
+                noughtIndex += 2 * powers[tile];
+                crosses++;
+            } else if (mark == O) {
+                crossIndex += 2 * powers[tile];
+                noughtIndex += powers[tile];
+                noughts++;
+            }
+        }
+        // When X has fewer marks the position is the table's position with
+        // the marks swapped and O to move, minimising the value.
+        boolean swapped = crosses < noughts;
+        int index = swapped ? noughtIndex : crossIndex;
+        if ((crosses != noughts && crosses != noughts - 1)
+                || crosses + noughts == tiles
+                || board.getWinLines().findWinner(board) != BLANK
+                || values.get(index) == UNKNOWN) {
+            return null;
+        }
+        int digit = swapped ? 2 : 1;
+        int[] bestMove = null;
+        int bestValue = Integer.MIN_VALUE;
+        for (int tile = 0; tile < tiles; tile++) {
+            if (!board.isTileMarked(tile / width, tile % width)) {
+                int value = values.get(index + digit * powers[tile]);
+                if (value == UNKNOWN) {
+                    return null;
+                }
+                value = swapped ? -value : value;
+                if (value > bestValue) {
+                    bestValue = value;
+                    bestMove = new int[]{tile / width, tile % width};
+                }
+            }
+        }
+        return bestMove;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWinLength() {
+        return winLength;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int width = -1, height = -1, winLength = -1;
+        Path output = null;
+        String usage = "Usage: --width n [--height n] "
+                + "[--win-length n] --output file";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for "
+                            + args[i]);
+                }
+                switch (args[i++]) {
+                    case "--width":
+                        width = Integer.parseInt(value);
+                        break;
+                    case "--height":
+                        height = Integer.parseInt(value);
+                        break;
+                    case "--win-length":
+                        winLength = Integer.parseInt(value);
+                        break;
+                    case "--output":
+                        output = Path.of(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option "
+                                + args[i - 1]);
+                }
+            }
+            if (width < 1 || output == null) {
+                throw new IllegalArgumentException("Missing --width or "
+                        + "--output");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage);
+            System.exit(1);
+            return;
+        }
+        height = height < 0 ? width : height;
+        winLength = winLength < 0 ? Math.min(width, height) : winLength;
+
+        long start = System.nanoTime();
+        generate(width, height, winLength, output);
+        System.out.printf("Solved %dx%d, %d in a row, in %.1f s%n", width,
+                height, winLength, (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,245 @@
+package ai;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size table of previously searched positions keyed by their Zobrist
+ * hash. Each entry records the value found for a position, the depth it was
+ * searched to and whether the value is exact or only a lower or upper bound
+ * because the search of that position was cut off by alpha-beta pruning.
+ * Entries are stored in primitive arrays, an entry's data is packed into a
+ * single long.
+ * <p>
+ * The table may be shared by searches running on several threads without
+ * locking. The key of each slot is stored XORed with its data, so an entry
+ * torn by two threads writing the slot at once no longer matches its key and
+ * reads as a miss rather than returning another position's data. Probes and
+ * stores are counted by each search, in its {@link SearchContext}, and added
+ * to the table's totals once when the search finishes, so threads sharing
+ * the table do not write a shared counter at every node.
+ *
+ * @author DavidHurst
+ */
+public class TranspositionTable {
+
+    /**
+     * How to decide whether a new entry may overwrite the one already in its
+     * slot.
+     */
+    public enum ReplacementPolicy {
+        /**
+         * The newest entry always replaces the old one.
+         */
+        ALWAYS,
+        /**
+         * Keep the entry searched to the greater depth unless it was stored
+         * during an earlier search.
+         */
+        DEPTH_PREFERRED
+    }
+
+    public static final int EXACT = 1;
+    public static final int LOWER_BOUND = 2;
+    public static final int UPPER_BOUND = 3;
+
+    /**
+     * Returned by {@link #probe(long)} when the position is not in the table.
+     */
+    public static final long MISS = 0;
+
+    /**
+     * Returned by {@link #store(long, int, int, int, int)} when the slot's
+     * deeper entry of the current search was kept.
+     */
+    public static final int NOT_STORED = 0;
+    /**
+     * Returned by {@link #store(long, int, int, int, int)} when the entry was
+     * stored in an empty slot or over the same position's entry.
+     */
+    public static final int STORED = 1;
+    /**
+     * Returned by {@link #store(long, int, int, int, int)} when the entry
+     * replaced another position's.
+     */
+    public static final int OVERWRITTEN = 2;
+
+    private static final int BYTES_PER_ENTRY = 2 * Long.BYTES;
+    private static final int DEPTH_SHIFT = 32;
+    private static final int FLAG_SHIFT = 40;
+    private static final int AGE_SHIFT = 42;
+    private static final int MOVE_SHIFT = 48;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int indexMask;
+    private final ReplacementPolicy policy;
+    private int age;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder overwrites = new LongAdder();
+
+    /**
+     * Create a table using at most the given amount of memory, the number of
+     * entries is rounded down to a power of two.
+     *
+     * @param maxBytes Memory budget for the table in bytes
+     * @param policy Policy used when two positions share a slot
+     */
+    public TranspositionTable(long maxBytes, ReplacementPolicy policy) {
+        long entries = Math.max(1, maxBytes / BYTES_PER_ENTRY);
+        int size = (int) Long.highestOneBit(Math.min(entries, 1 << 30));
+        keys = new long[size];
+        data = new long[size];
+        indexMask = size - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * Look up a position.
+     *
+     * @param key Hash of the position
+     * @return The packed entry for the position or {@link #MISS}
+     */
+    public long probe(long key) {
+        int index = (int) key & indexMask;
+        long entry = data[index];
+        if ((keys[index] ^ entry) == key && entry != MISS) {
+            return entry;
+        }
+        return MISS;
+    }
+
+    /**
+     * Record the result of searching a position.
+     *
+     * @param key Hash of the position
+     * @param depth Depth the position was searched to
+     * @param value Value found by the search
+     * @param flag {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}
+     * @param move Tile index of the best move found or -1 if there is none
+     * @return {@link #NOT_STORED}, {@link #STORED} or {@link #OVERWRITTEN}
+     */
+    public int store(long key, int depth, int value, int flag, int move) {
+        int index = (int) key & indexMask;
+        long old = data[index];
+        int result = STORED;
+        if (old != MISS && (keys[index] ^ old) != key) {
+            if (policy == ReplacementPolicy.DEPTH_PREFERRED
+                    && ageOf(old) == age && depthOf(old) > depth) {
+                return NOT_STORED;
+            }
+            result = OVERWRITTEN;
+        }
+        long entry = (value & 0xFFFFFFFFL)
+                | ((long) (depth & 0xFF) << DEPTH_SHIFT)
+                | ((long) flag << FLAG_SHIFT)
+                | ((long) age << AGE_SHIFT)
+                | ((long) (move + 1) << MOVE_SHIFT);
+        keys[index] = key ^ entry;
+        data[index] = entry;
+        return result;
+    }
+
+    /**
+     * Add the counts of a finished search to the table's totals.
+     */
+    void addCounts(long probeCount, long hitCount, long storeCount,
+            long overwriteCount) {
+        probes.add(probeCount);
+        hits.add(hitCount);
+        stores.add(storeCount);
+        overwrites.add(overwriteCount);
+    }
+
+    /**
+     * Mark the start of a new search, entries stored by earlier searches are
+     * kept but become the first to be replaced.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0x3F;
+    }
+
+    /**
+     * Remove every entry and reset the statistics.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, MISS);
+        probes.reset();
+        hits.reset();
+        stores.reset();
+        overwrites.reset();
+    }
+
+    public static int valueOf(long entry) {
+        return (int) entry;
+    }
+
+    public static int depthOf(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    public static int flagOf(long entry) {
+        return (int) (entry >>> FLAG_SHIFT) & 0x3;
+    }
+
+    /**
+     * @param entry Packed entry
+     * @return Tile index of the entry's best move or -1 if it has none
+     */
+    public static int moveOf(long entry) {
+        return (int) (entry >>> MOVE_SHIFT) - 1;
+    }
+
+    private static int ageOf(long entry) {
+        return (int) (entry >>> AGE_SHIFT) & 0x3F;
+    }
+
+    /**
+     * @return Number of entries the table can hold
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return Number of probes made by the searches which have finished
+     */
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * @return Number of stores which replaced an entry for another position
+     */
+    public long getOverwrites() {
+        return overwrites.sum();
+    }
+
+    /**
+     * @return Fraction of probes which found their position, 0 if the table
+     * has not been probed
+     */
+    public double getHitRate() {
+        long probeCount = probes.sum();
+        return probeCount == 0 ? 0 : (double) hits.sum() / probeCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TranspositionTable[entries=%d, probes=%d, "
+                + "hits=%d (%.1f%%), stores=%d, overwrites=%d]", capacity(),
+                getProbes(), getHits(), getHitRate() * 100, getStores(),
+                getOverwrites());
+    }
+}
@@ -0,0 +1,126 @@
+package game;
+
+import java.util.Arrays;
+
+import static game.Mark.*;
+
+/**
+ * Primitive storage for the marks on a board. Each player's marks are kept as
+ * a bitmask indexed by {@code row * width + col}, boards of up to 64 tiles fit
+ * in a single long per player and larger boards spill over into long arrays.
+ *
+ * @author DavidHurst
+ */
+public class BitBoard {
+
+    private final int width;
+    private final int height;
+    private final boolean wide;
+    private long xBits, oBits;
+    private final long[] xWords, oWords;
+
+    public BitBoard(int width) {
+        this(width, width);
+    }
+
+    /**
+     * @param width Number of columns
+     * @param height Number of rows
+     */
+    public BitBoard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int tiles = width * height;
+        wide = tiles > Long.SIZE;
+        if (wide) {
+            int words = (tiles + Long.SIZE - 1) / Long.SIZE;
+            xWords = new long[words];
+            oWords = new long[words];
+        } else {
+            xWords = null;
+            oWords = null;
+        }
+    }
+
+    public Mark getMarkAt(int row, int column) {
+        int tile = row * width + column;
+        long bit = 1L << tile;
+        if (!wide) {
+            if ((xBits & bit) != 0) {
+                return X;
+            }
+            return (oBits & bit) != 0 ? O : BLANK;
+        }
+        int word = tile >>> 6;
+        if ((xWords[word] & bit) != 0) {
+            return X;
+        }
+        return (oWords[word] & bit) != 0 ? O : BLANK;
+    }
+
+    public boolean isTileMarked(int row, int column) {
+        int tile = row * width + column;
+        if (!wide) {
+            return ((xBits | oBits) & (1L << tile)) != 0;
+        }
+        int word = tile >>> 6;
+        return ((xWords[word] | oWords[word]) & (1L << tile)) != 0;
+    }
+
+    public void setMarkAt(int row, int column, Mark newMark) {
+        int tile = row * width + column;
+        long bit = 1L << tile;
+        if (!wide) {
+            xBits = newMark == X ? xBits | bit : xBits & ~bit;
+            oBits = newMark == O ? oBits | bit : oBits & ~bit;
+            return;
+        }
+        int word = tile >>> 6;
+        xWords[word] = newMark == X ? xWords[word] | bit : xWords[word] & ~bit;
+        oWords[word] = newMark == O ? oWords[word] | bit : oWords[word] & ~bit;
+    }
+
+    /**
+     * Remove every mark from the board.
+     */
+    public void clear() {
+        xBits = 0;
+        oBits = 0;
+        if (wide) {
+            Arrays.fill(xWords, 0);
+            Arrays.fill(oWords, 0);
+        }
+    }
+
+    /**
+     * @return true if the board has more than 64 tiles and is stored in long
+     * arrays rather than single masks
+     */
+    public boolean isWide() {
+        return wide;
+    }
+
+    /**
+     * @return Mask of the tiles marked by X, only valid for boards which are
+     * not wide
+     */
+    public long getXBits() {
+        return xBits;
+    }
+
+    /**
+     * @return Mask of the tiles marked by O, only valid for boards which are
+     * not wide
+     */
+    public long getOBits() {
+        return oBits;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -1,5 +1,7 @@
 package game;
 
+import java.util.Arrays;
+
 import static game.Mark.*;
 
 /**
@@ -7,22 +9,155 @@ import static game.Mark.*;
  */
 public class Board {
 
+    /**
+     * Store marks in a primitive BitBoard rather than an array of Marks, this
+     * keeps searches on larger boards from walking an object graph.
+     */
+    private static final boolean USE_BITBOARD = true;
+    private static final int DEFAULT_WIDTH = 3;
+    private static final GameListener[] NO_LISTENERS = new GameListener[0];
+
     private final Mark[][] board;
+    private final BitBoard bitBoard;
+    private final WinLines winLines;
+    private final Symmetry symmetry;
+    private final long[][] zobristKeys;
+    private final long[] symmetricHashes = new long[Symmetry.TRANSFORMS];
     private Mark winningMark;
-    private final int BOARD_WIDTH = 3;
+    private final int BOARD_WIDTH;
+    private final int BOARD_HEIGHT;
+    private final int WIN_LENGTH;
     private boolean crossTurn, gameOver;
-    private int availableMoves = BOARD_WIDTH * BOARD_WIDTH;
+    private int availableMoves;
+    private final int[] searchMoves;
+    private int searchPly, winningPly = -1;
+    private long searchMoveCount;
+    private Mark searchWinner = BLANK;
+    private final int[][] linesThrough;
+    private final int[] lineStates;
+    private final int[] lineStateValues;
+    private final int[] lineStateSlots;
+    private final int[] lineSteps;
+    private final int[] openLines;
+    private int linePotential;
+    private GameListener[] listeners = NO_LISTENERS;
 
     public Board() {
-        board = new Mark[BOARD_WIDTH][BOARD_WIDTH];
+        this(DEFAULT_WIDTH);
+    }
+
+    /**
+     * Create a square board won by filling a whole row, column or diagonal.
+     *
+     * @param width Number of tiles along each side of the board
+     */
+    public Board(int width) {
+        this(width, width, width);
+    }
+
+    /**
+     * Create a board for the m,n,k-game, won by the first player to place
+     * winLength marks in a horizontal, vertical or diagonal line.
+     *
+     * @param width Number of columns
+     * @param height Number of rows
+     * @param winLength Number of marks in a line needed to win
+     */
+    public Board(int width, int height, int winLength) {
+        if (width < 1 || height < 1 || winLength < 1
+                || winLength > Math.max(width, height)) {
+            throw new IllegalArgumentException("Invalid board " + width + "x"
+                    + height + " with win length " + winLength);
+        }
+        BOARD_WIDTH = width;
+        BOARD_HEIGHT = height;
+        WIN_LENGTH = winLength;
+        availableMoves = BOARD_WIDTH * BOARD_HEIGHT;
+        searchMoves = new int[BOARD_WIDTH * BOARD_HEIGHT];
+        if (USE_BITBOARD) {
+            board = null;
+            bitBoard = new BitBoard(BOARD_WIDTH, BOARD_HEIGHT);
+        } else {
+            board = new Mark[BOARD_HEIGHT][BOARD_WIDTH];
+            bitBoard = null;
+        }
+        winLines = WinLines.of(BOARD_WIDTH, BOARD_HEIGHT, WIN_LENGTH);
+        linesThrough = winLines.getLinesThrough();
+        lineStates = new int[winLines.getLines().length];
+        lineStateValues = winLines.getStateValues();
+        lineStateSlots = winLines.getStateSlots();
+        // Indexed by Mark ordinal: X, O then BLANK.
+        lineSteps = new int[]{1, WIN_LENGTH + 1, 0};
+        openLines = new int[2 * (WIN_LENGTH + 1) + 1];
+        openLines[0] = lineStates.length;
+        symmetry = Symmetry.of(BOARD_WIDTH, BOARD_HEIGHT);
+        zobristKeys = Zobrist.symmetricKeysFor(BOARD_WIDTH, BOARD_HEIGHT,
+                WIN_LENGTH);
         crossTurn = true;
         gameOver = false;
         winningMark = BLANK;
         initialiseBoard();
     }
 
+    /**
+     * Create a copy of a board which can be searched independently of the
+     * original, for example by another thread.
+     *
+     * @param other Board to copy
+     */
+    public Board(Board other) {
+        this(other.BOARD_WIDTH, other.BOARD_HEIGHT, other.WIN_LENGTH);
+        for (int row = 0; row < BOARD_HEIGHT; row++) {
+            for (int col = 0; col < BOARD_WIDTH; col++) {
+                setMarkAt(row, col, other.getMarkAt(row, col));
+            }
+        }
+        crossTurn = other.crossTurn;
+        gameOver = other.gameOver;
+        winningMark = other.winningMark;
+        availableMoves = other.availableMoves;
+        System.arraycopy(other.searchMoves, 0, searchMoves, 0,
+                searchMoves.length);
+        searchPly = other.searchPly;
+        winningPly = other.winningPly;
+        searchWinner = other.searchWinner;
+    }
+
+    /**
+     * Create a board holding a position's marks, with the game over if a
+     * player has won or the board is full. A win is also the search winner,
+     * as it would be had the marks been placed with
+     * {@link #makeMove(int, int, Mark)}, but no moves are left to undo.
+     *
+     * @param position Position to play on from
+     */
+    public Board(Position position) {
+        this(position.getWidth(), position.getHeight(),
+                position.getWinLength());
+        for (int row = 0; row < BOARD_HEIGHT; row++) {
+            for (int col = 0; col < BOARD_WIDTH; col++) {
+                Mark mark = position.getMarkAt(row, col);
+                if (mark.isMarked()) {
+                    setMarkAt(row, col, mark);
+                    availableMoves--;
+                }
+            }
+        }
+        crossTurn = position.getTurn() == X;
+        winningMark = position.getWinner();
+        gameOver = winningMark != BLANK || availableMoves == 0;
+        if (winningMark != BLANK) {
+            searchWinner = winningMark;
+            winningPly = 0;
+        }
+    }
+
     private void initialiseBoard() {
-        for (int row = 0; row < BOARD_WIDTH; row++) {
+        if (USE_BITBOARD) {
+            bitBoard.clear();
+            return;
+        }
+        for (int row = 0; row < BOARD_HEIGHT; row++) {
             for (int col = 0; col < BOARD_WIDTH; col++) {
                 board[row][col] = BLANK;
             }
@@ -32,99 +167,143 @@ public class Board {
     /**
      * Attempt to mark tile at the given coordinates if they are valid and it is
      * possible to do so, toggle the player and check if the placing the mark
-     * has resulted in a win.
+     * has resulted in a win. Listeners are told of the move and of the end of
+     * the game.
      *
      * @param row Row coordinate to attempt to mark
      * @param col Column coordinate to attempt to mark
      * @return true if mark was placed successfully
      */
     public boolean placeMark(int row, int col) {
-        if (row < 0 || row >= BOARD_WIDTH || col < 0 || col >= BOARD_WIDTH
+        if (row < 0 || row >= BOARD_HEIGHT || col < 0 || col >= BOARD_WIDTH
                 || isTileMarked(row, col) || gameOver) {
             return false;
         }
         availableMoves--;
-        board[row][col] = crossTurn ? X : O;
+        Mark mark = crossTurn ? X : O;
+        setMarkAt(row, col, mark);
         togglePlayer();
         checkWin(row, col);
+        for (GameListener listener : listeners) {
+            listener.movePlaced(this, row, col, mark);
+        }
+        if (gameOver) {
+            for (GameListener listener : listeners) {
+                if (winningMark == BLANK) {
+                    listener.gameDrawn(this);
+                } else {
+                    listener.gameWon(this, winningMark, row, col);
+                }
+            }
+        }
         return true;
     }
 
     /**
-     * Check row and column provided and diagonals for win.
+     * Check the lines through the tile provided for a win.
      *
-     * @param row Row to check
-     * @param col Column to check
+     * @param row Row of the tile which was marked
+     * @param col Column of the tile which was marked
      */
     private void checkWin(int row, int col) {
-        int rowSum = 0;
-        // Check row for winner.
-        for (int c = 0; c < BOARD_WIDTH; c++) {
-            rowSum += getMarkAt(row, c).getMark();
-        }
-        if (calcWinner(rowSum) != BLANK) {
-            System.out.println(winningMark + " wins on row " + row);
+        Mark mark = getMarkAt(row, col);
+        if (winLines.completesLine(this, row * BOARD_WIDTH + col, mark)) {
+            gameOver = true;
+            winningMark = mark;
             return;
         }
 
-        // Check column for winner.
-        rowSum = 0;
-        for (int r = 0; r < BOARD_WIDTH; r++) {
-            rowSum += getMarkAt(r, col).getMark();
-        }
-        if (calcWinner(rowSum) != BLANK) {
-            System.out.println(winningMark + " wins on column " + col);
-            return;
+        if (!anyMovesAvailable()) {
+            gameOver = true;
         }
+    }
 
-        // Top-left to bottom-right diagonal.
-        rowSum = 0;
-        for (int i = 0; i < BOARD_WIDTH; i++) {
-            rowSum += getMarkAt(i, i).getMark();
-        }
-        if (calcWinner(rowSum) != BLANK) {
-            System.out.println(winningMark + " wins on the top-left to "
-                    + "bottom-right diagonal");
-            return;
-        }
+    /**
+     * Tell the listener about the moves and result of the game from now on,
+     * copies of the board do not inherit it.
+     *
+     * @param listener Listener to add
+     */
+    public void addGameListener(GameListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
 
-        // Top-right to bottom-left diagonal.
-        rowSum = 0;
-        int indexMax = BOARD_WIDTH - 1;
-        for (int i = 0; i <= indexMax; i++) {
-            rowSum += getMarkAt(i, indexMax - i).getMark();
-        }
-        if (calcWinner(rowSum) != BLANK) {
-            System.out.println(winningMark + " wins on the top-right to "
-                    + "bottom-left diagonal.");
-            return;
+    /**
+     * @param listener Listener to stop telling about the game
+     */
+    public void removeGameListener(GameListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                GameListener[] fewer = new GameListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, fewer, 0, i);
+                System.arraycopy(listeners, i + 1, fewer, i,
+                        fewer.length - i);
+                listeners = fewer;
+                return;
+            }
         }
+    }
 
-        if (!anyMovesAvailable()) {
-            gameOver = true;
-            System.out.println("Tie!");
+    /**
+     * Place a mark during a search without changing whose turn it is in the
+     * game, only the lines through the marked tile are checked for a win so
+     * the result is available from {@link #getSearchWinner()} without
+     * evaluating the whole board. Every call must be undone with
+     * {@link #unmakeMove()} in reverse order.
+     *
+     * @param row Row coordinate to mark
+     * @param col Column coordinate to mark
+     * @param mark Mark to place
+     */
+    public void makeMove(int row, int col, Mark mark) {
+        int tile = row * BOARD_WIDTH + col;
+        setMarkAt(row, col, mark);
+        availableMoves--;
+        searchMoves[searchPly++] = tile;
+        searchMoveCount++;
+        if (winningPly < 0 && winLines.completesLine(this, tile, mark)) {
+            winningPly = searchPly;
+            searchWinner = mark;
         }
     }
 
     /**
-     * Calculates if provided ASCII sum equates to a win for X or O.
-     *
-     * @param rowSum Sum of characters' ASCII values in a row
-     * @return Mark indicating which player won or a space character if neither
+     * Undo the most recent call to {@link #makeMove(int, int, Mark)}, restoring
+     * the tile and the search winner.
      */
-    private Mark calcWinner(int rowSum) {
-        int Xwin = X.getMark() * BOARD_WIDTH;
-        int Owin = O.getMark() * BOARD_WIDTH;
-        if (rowSum == Xwin) {
-            gameOver = true;
-            winningMark = X;
-            return X;
-        } else if (rowSum == Owin) {
-            gameOver = true;
-            winningMark = O;
-            return O;
+    public void unmakeMove() {
+        if (searchPly == winningPly) {
+            winningPly = -1;
+            searchWinner = BLANK;
         }
-        return BLANK;
+        int tile = searchMoves[--searchPly];
+        availableMoves++;
+        setMarkAt(tile / BOARD_WIDTH, tile % BOARD_WIDTH, BLANK);
+    }
+
+    /**
+     * @return Number of moves made with {@link #makeMove(int, int, Mark)} which
+     * have not been undone
+     */
+    public int getSearchPly() {
+        return searchPly;
+    }
+
+    /**
+     * @return Total number of calls to {@link #makeMove(int, int, Mark)} made
+     * on this board, which is the number of nodes searched on it
+     */
+    public long getSearchMoveCount() {
+        return searchMoveCount;
+    }
+
+    /**
+     * @return Mark of the player who completed a line during the moves made
+     * with {@link #makeMove(int, int, Mark)} or BLANK if neither has
+     */
+    public Mark getSearchWinner() {
+        return searchWinner;
     }
 
     private void togglePlayer() {
@@ -137,23 +316,83 @@ public class Board {
     }
 
     public Mark getMarkAt(int row, int column) {
+        if (USE_BITBOARD) {
+            return bitBoard.getMarkAt(row, column);
+        }
         return board[row][column];
     }
 
     public boolean isTileMarked(int row, int column) {
+        if (USE_BITBOARD) {
+            return bitBoard.isTileMarked(row, column);
+        }
         return board[row][column].isMarked();
     }
 
     public void setMarkAt(int row, int column, Mark newMark) {
+        int tile = row * BOARD_WIDTH + column;
+        Mark oldMark = getMarkAt(row, column);
+        int oldKey = tile * 3 + oldMark.ordinal();
+        int newKey = tile * 3 + newMark.ordinal();
+        for (int t = 0; t < Symmetry.TRANSFORMS; t++) {
+            symmetricHashes[t] ^= zobristKeys[t][oldKey]
+                    ^ zobristKeys[t][newKey];
+        }
+        if (oldMark != newMark) {
+            updateLines(tile, oldMark, newMark);
+        }
+        if (USE_BITBOARD) {
+            bitBoard.setMarkAt(row, column, newMark);
+            return;
+        }
         board[row][column] = newMark;
     }
 
+    /**
+     * Move each line through the tile to its new state, keeping the open line
+     * counts and the line potential up to date.
+     */
+    private void updateLines(int tile, Mark oldMark, Mark newMark) {
+        int step = lineSteps[newMark.ordinal()] - lineSteps[oldMark.ordinal()];
+        for (int line : linesThrough[tile]) {
+            int before = lineStates[line];
+            int after = before + step;
+            lineStates[line] = after;
+            linePotential += lineStateValues[after] - lineStateValues[before];
+            openLines[lineStateSlots[before]]--;
+            openLines[lineStateSlots[after]]++;
+        }
+    }
+
+    /**
+     * @param mark Player whose lines to count
+     * @param marks Number of the player's marks, from 1 to the win length
+     * @return Number of lines holding that many of the player's marks and
+     * none of the opponent's
+     */
+    public int countOpenLines(Mark mark, int marks) {
+        return openLines[mark == X ? marks : WIN_LENGTH + 1 + marks];
+    }
+
+    /**
+     * Heuristic value of the position for X. Each line marked by only one
+     * player is worth {@link WinLines#getLineWeight(int)} of its marks to
+     * that player, X's lines count for and O's against. The value is kept up
+     * to date as marks are placed and removed so reading it is free, a full
+     * board without a winner is worth 0.
+     *
+     * @return Weighted open lines of X less those of O
+     */
+    public int getLinePotential() {
+        return linePotential;
+    }
+
     @Override
     public String toString() {
         StringBuilder strBldr = new StringBuilder();
-        for (Mark[] row : board) {
-            for (Mark tile : row) {
-                strBldr.append(tile).append(' ');
+        for (int row = 0; row < BOARD_HEIGHT; row++) {
+            for (int col = 0; col < BOARD_WIDTH; col++) {
+                strBldr.append(getMarkAt(row, col)).append(' ');
             }
             strBldr.append("\n");
         }
@@ -168,6 +407,76 @@ public class Board {
         return BOARD_WIDTH;
     }
 
+    public int getHeight() {
+        return BOARD_HEIGHT;
+    }
+
+    /**
+     * @return Number of marks in a line needed to win
+     */
+    public int getWinLength() {
+        return WIN_LENGTH;
+    }
+
+    /**
+     * @return Zobrist hash of the marks currently on the board
+     */
+    public long getHash() {
+        return symmetricHashes[0];
+    }
+
+    /**
+     * @param transform Index of a {@link Symmetry} transform
+     * @return Zobrist hash of the board after applying the transform
+     */
+    public long getSymmetricHash(int transform) {
+        return symmetricHashes[transform];
+    }
+
+    /**
+     * The hash of every rotation and reflection of the board is kept up to
+     * date, the smallest of them is shared by all the equivalent positions.
+     *
+     * @return Zobrist hash of the board's canonical orientation
+     */
+    public long getCanonicalHash() {
+        long min = symmetricHashes[0];
+        for (int t = 1; t < Symmetry.TRANSFORMS; t++) {
+            min = Math.min(min, symmetricHashes[t]);
+        }
+        return min;
+    }
+
+    /**
+     * @return Index of the {@link Symmetry} transform which takes the board
+     * to its canonical orientation
+     */
+    public int getCanonicalTransform() {
+        int best = 0;
+        for (int t = 1; t < Symmetry.TRANSFORMS; t++) {
+            if (symmetricHashes[t] < symmetricHashes[best]) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    public Symmetry getSymmetry() {
+        return symmetry;
+    }
+
+    /**
+     * @return Primitive storage of the board's marks or null if the board is
+     * stored as an array of Marks
+     */
+    public BitBoard getBitBoard() {
+        return bitBoard;
+    }
+
+    public WinLines getWinLines() {
+        return winLines;
+    }
+
     public boolean isGameOver() {
         return gameOver;
     }
@@ -0,0 +1,41 @@
+package game;
+
+/**
+ * Observer of a game played on a {@link Board} with
+ * {@link Board#placeMark(int, int)}, such as the game's view or a log. Moves
+ * made by searches with {@link Board#makeMove(int, int, Mark)} are not
+ * reported. Events are delivered on the thread which placed the mark, in the
+ * order the listeners were added.
+ *
+ * @author DavidHurst
+ */
+public interface GameListener {
+
+    /**
+     * @param board Board the mark was placed on
+     * @param row Row of the marked tile
+     * @param col Column of the marked tile
+     * @param mark Mark placed
+     */
+    default void movePlaced(Board board, int row, int col, Mark mark) {
+    }
+
+    /**
+     * Follows the move which completed a line.
+     *
+     * @param board Board the game was played on
+     * @param winner Mark of the winning player
+     * @param row Row of the tile which completed the line
+     * @param col Column of the tile which completed the line
+     */
+    default void gameWon(Board board, Mark winner, int row, int col) {
+    }
+
+    /**
+     * Follows the move which filled the board without completing a line.
+     *
+     * @param board Board the game was played on
+     */
+    default void gameDrawn(Board board) {
+    }
+}
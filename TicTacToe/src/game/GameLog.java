@@ -0,0 +1,32 @@
+package game;
+
+import java.io.PrintStream;
+
+/**
+ * Writes the result of each game to a stream, the messages Board printed
+ * itself before games reported their events to listeners.
+ *
+ * @author DavidHurst
+ */
+public class GameLog implements GameListener {
+
+    private final PrintStream out;
+
+    /**
+     * @param out Stream to write results to
+     */
+    public GameLog(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void gameWon(Board board, Mark winner, int row, int col) {
+        out.println(winner + " wins with a line through row " + row
+                + ", column " + col);
+    }
+
+    @Override
+    public void gameDrawn(Board board) {
+        out.println("Tie!");
+    }
+}
@@ -0,0 +1,293 @@
+package game;
+
+import static game.Mark.*;
+
+/**
+ * An immutable snapshot of the marks on a board, packed into one long per
+ * player indexed by {@code row * width + col} as {@link BitBoard} stores them.
+ * Unlike a {@link Board} a position can be shared between threads without
+ * copying, each search turning it into a board of its own with
+ * {@link #toBoard()}, and {@link #withMove(int, int)} derives the next
+ * position without touching the original.
+ * <p>
+ * Positions are limited to boards of up to 64 tiles. X moves first, so it is
+ * X's turn whenever both players have placed the same number of marks.
+ *
+ * @author DavidHurst
+ */
+public final class Position {
+
+    private final long xBits;
+    private final long oBits;
+    private final int width;
+    private final int height;
+    private final int winLength;
+
+    private Position(long xBits, long oBits, int width, int height,
+            int winLength) {
+        this.xBits = xBits;
+        this.oBits = oBits;
+        this.width = width;
+        this.height = height;
+        this.winLength = winLength;
+    }
+
+    /**
+     * @param width Number of columns
+     * @param height Number of rows
+     * @param winLength Number of marks in a line needed to win
+     * @return The position before any marks have been placed
+     */
+    public static Position empty(int width, int height, int winLength) {
+        if (width < 1 || height < 1 || winLength < 1
+                || winLength > Math.max(width, height)) {
+            throw new IllegalArgumentException("Invalid board " + width + "x"
+                    + height + " with win length " + winLength);
+        }
+        checkSize(width, height);
+        return new Position(0, 0, width, height, winLength);
+    }
+
+    /**
+     * @param board Board to take a snapshot of
+     * @return The marks currently on the board
+     */
+    public static Position of(Board board) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        checkSize(width, height);
+        BitBoard bits = board.getBitBoard();
+        if (bits != null) {
+            return new Position(bits.getXBits(), bits.getOBits(), width,
+                    height, board.getWinLength());
+        }
+        long xBits = 0, oBits = 0;
+        for (int tile = 0; tile < width * height; tile++) {
+            Mark mark = board.getMarkAt(tile / width, tile % width);
+            if (mark == X) {
+                xBits |= 1L << tile;
+            } else if (mark == O) {
+                oBits |= 1L << tile;
+            }
+        }
+        return new Position(xBits, oBits, width, height,
+                board.getWinLength());
+    }
+
+    /**
+     * @param xBits Mask of the tiles marked by X
+     * @param oBits Mask of the tiles marked by O
+     * @param width Number of columns
+     * @param height Number of rows
+     * @param winLength Number of marks in a line needed to win
+     * @return The position with the given marks
+     * @throws IllegalArgumentException If a tile is marked by both players or
+     * lies off the board
+     */
+    public static Position of(long xBits, long oBits, int width, int height,
+            int winLength) {
+        Position empty = empty(width, height, winLength);
+        long tiles = width * height == Long.SIZE
+                ? -1L : (1L << (width * height)) - 1;
+        if ((xBits & oBits) != 0 || ((xBits | oBits) & ~tiles) != 0) {
+            throw new IllegalArgumentException("Invalid marks for a "
+                    + width + "x" + height + " board");
+        }
+        return new Position(xBits, oBits, empty.width, empty.height,
+                empty.winLength);
+    }
+
+    private static void checkSize(int width, int height) {
+        if (width * height > Long.SIZE) {
+            throw new IllegalArgumentException("A position holds at most "
+                    + Long.SIZE + " tiles, not " + width + "x" + height);
+        }
+    }
+
+    /**
+     * @return A new board with this position's marks, see
+     * {@link Board#Board(Position)}
+     */
+    public Board toBoard() {
+        return new Board(this);
+    }
+
+    /**
+     * Place the mark of the player whose turn it is.
+     *
+     * @param row Row coordinate to mark
+     * @param col Column coordinate to mark
+     * @return The position after the move
+     */
+    public Position withMove(int row, int col) {
+        return withMove(row, col, getTurn());
+    }
+
+    /**
+     * @param row Row coordinate to mark
+     * @param col Column coordinate to mark
+     * @param mark Mark to place
+     * @return The position after the move
+     * @throws IllegalArgumentException If the tile is off the board or
+     * already marked, or the mark is BLANK
+     */
+    public Position withMove(int row, int col, Mark mark) {
+        if (row < 0 || row >= height || col < 0 || col >= width
+                || isTileMarked(row, col) || !mark.isMarked()) {
+            throw new IllegalArgumentException("Cannot place " + mark
+                    + " at row " + row + ", column " + col);
+        }
+        long bit = 1L << (row * width + col);
+        return mark == X
+                ? new Position(xBits | bit, oBits, width, height, winLength)
+                : new Position(xBits, oBits | bit, width, height, winLength);
+    }
+
+    /**
+     * @param transform Index of a {@link Symmetry} transform
+     * @return The position with every mark moved by the transform
+     */
+    public Position transform(int transform) {
+        if (transform == 0) {
+            return this;
+        }
+        Symmetry symmetry = Symmetry.of(width, height);
+        long x = 0, o = 0;
+        for (long bits = xBits; bits != 0; bits &= bits - 1) {
+            x |= 1L << symmetry.transformTile(transform,
+                    Long.numberOfTrailingZeros(bits));
+        }
+        for (long bits = oBits; bits != 0; bits &= bits - 1) {
+            o |= 1L << symmetry.transformTile(transform,
+                    Long.numberOfTrailingZeros(bits));
+        }
+        return new Position(x, o, width, height, winLength);
+    }
+
+    /**
+     * Equivalent positions, rotations and reflections of each other, share
+     * one canonical orientation: the one whose X and then O masks are
+     * smallest.
+     *
+     * @return Index of the {@link Symmetry} transform which takes the
+     * position to its canonical orientation
+     */
+    public int getCanonicalTransform() {
+        int best = 0;
+        Position bestPosition = this;
+        for (int t = 1; t < Symmetry.TRANSFORMS; t++) {
+            Position candidate = transform(t);
+            int order = Long.compareUnsigned(candidate.xBits,
+                    bestPosition.xBits);
+            if (order < 0 || (order == 0 && Long.compareUnsigned(
+                    candidate.oBits, bestPosition.oBits) < 0)) {
+                best = t;
+                bestPosition = candidate;
+            }
+        }
+        return best;
+    }
+
+    public Mark getMarkAt(int row, int column) {
+        long bit = 1L << (row * width + column);
+        if ((xBits & bit) != 0) {
+            return X;
+        }
+        return (oBits & bit) != 0 ? O : BLANK;
+    }
+
+    public boolean isTileMarked(int row, int column) {
+        return ((xBits | oBits) & (1L << (row * width + column))) != 0;
+    }
+
+    /**
+     * @return Number of marks placed by both players
+     */
+    public int getMoveCount() {
+        return Long.bitCount(xBits) + Long.bitCount(oBits);
+    }
+
+    /**
+     * @return Mark of the player to move next
+     */
+    public Mark getTurn() {
+        return Long.bitCount(xBits) > Long.bitCount(oBits) ? O : X;
+    }
+
+    /**
+     * @return Mark of the player who has completed a line or BLANK if neither
+     * has
+     */
+    public Mark getWinner() {
+        return WinLines.of(width, height, winLength).findWinner(xBits, oBits);
+    }
+
+    /**
+     * @return true if a player has won or every tile is marked
+     */
+    public boolean isGameOver() {
+        return getMoveCount() == width * height || getWinner() != BLANK;
+    }
+
+    /**
+     * @return Mask of the tiles marked by X
+     */
+    public long getXBits() {
+        return xBits;
+    }
+
+    /**
+     * @return Mask of the tiles marked by O
+     */
+    public long getOBits() {
+        return oBits;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Number of marks in a line needed to win
+     */
+    public int getWinLength() {
+        return winLength;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Position)) {
+            return false;
+        }
+        Position position = (Position) other;
+        return xBits == position.xBits && oBits == position.oBits
+                && width == position.width && height == position.height
+                && winLength == position.winLength;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = xBits * 31 + oBits;
+        hash = hash * 31 + WinLines.configurationKey(width, height, winLength);
+        return Long.hashCode(hash);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder strBldr = new StringBuilder();
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                strBldr.append(getMarkAt(row, col)).append(' ');
+            }
+            strBldr.append("\n");
+        }
+        return strBldr.toString();
+    }
+}
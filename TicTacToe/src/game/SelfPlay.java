@@ -0,0 +1,402 @@
+package game;
+
+import ai.EngineRegistry;
+import ai.EngineSettings;
+import ai.MiniMaxCombined;
+import ai.OpeningBook;
+import ai.SearchEngine;
+import ai.SearchMetrics;
+import ai.SearchStats;
+import ai.Tablebase;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static game.Mark.*;
+
+/**
+ * Plays games between two of the engines in {@link EngineRegistry} without the
+ * GUI and reports how often each won along with how long their moves took.
+ * The engines take turns at playing X and games are played in parallel, each
+ * starting with a number of random moves so that the games differ. Every
+ * thread creates its own pair of engines, as an engine keeps state between
+ * moves.
+ * <p>
+ * The engines only search for X's move, so O's moves are found on a copy of
+ * the board with the marks swapped. Moves are made with
+ * {@link Board#makeMove(int, int, Mark)}, which detects a win from the lines
+ * through the marked tile alone.
+ * <p>
+ * Usage: {@code java -cp TicTacToe/target/classes game.SelfPlay [options]}
+ * <pre>
+ * --first name       First engine, default MiniMaxCombined
+ * --second name      Second engine, default MiniMaxAlphaBeta
+ * --games n          Number of games, default 10000
+ * --width n          Width of the board, default 3
+ * --height n         Height of the board, default the width
+ * --win-length n     Marks in a row needed to win, default the smaller side
+ * --random-moves n   Random moves at the start of each game, default 2
+ * --threads n        Threads to play games on, default every core
+ * --seed n           Seed of the random moves, default 1
+ * --depth n          Depth the engines search to, default each engine's own
+ * --budget ms        Time allowed for each move by engines which support it,
+ *                    default no limit
+ * --playouts n       Random games for each move of MonteCarloTreeSearch,
+ *                    default 20000, 0 for no limit
+ * --output file      Also write the report to a file
+ * --tablebase file   Tablebase for MiniMaxCombined to look moves up in
+ * --book file        Opening book for MiniMaxCombined to look moves up in
+ * </pre>
+ * The engines are cleared at the start of each batch of games, so with
+ * engines which search to a fixed depth the results depend only on the seed,
+ * not the number of threads. Engines with a time budget and
+ * MonteCarloTreeSearch depend on timing as well. Run with
+ * {@code -Dai.searchStats=true} to also report the totals of the searches
+ * made by the engines with a transposition table.
+ *
+ * @author DavidHurst
+ */
+public final class SelfPlay {
+
+    /**
+     * Games are handed to threads in batches of this size, each batch draws
+     * its random moves from its own generator.
+     */
+    private static final int BATCH_SIZE = 1000;
+    /**
+     * Default random games for each move of MonteCarloTreeSearch.
+     */
+    private static final int PLAYOUTS_PER_MOVE = 20_000;
+
+    private SelfPlay() {
+    }
+
+    /**
+     * Win, draw and loss counts and move timings of a number of games.
+     */
+    private static final class Results {
+
+        final long[] wins = new long[2];
+        final MoveTimes[] times = {new MoveTimes(), new MoveTimes()};
+        long draws;
+
+        void add(Results other) {
+            for (int i = 0; i < 2; i++) {
+                wins[i] += other.wins[i];
+                times[i].add(other.times[i]);
+            }
+            draws += other.draws;
+        }
+    }
+
+    /**
+     * Histogram of move times accurate to within an eighth.
+     */
+    private static final class MoveTimes {
+
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        private final long[] buckets = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+        private long count, totalNanos, maxNanos;
+
+        void record(long nanos) {
+            buckets[bucketOf(nanos)]++;
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        void add(MoveTimes other) {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] += other.buckets[i];
+            }
+            count += other.count;
+            totalNanos += other.totalNanos;
+            maxNanos = Math.max(maxNanos, other.maxNanos);
+        }
+
+        /**
+         * @param fraction Fraction of moves, between 0 and 1
+         * @return Time in nanoseconds which that fraction of moves took no
+         * longer than
+         */
+        long percentile(double fraction) {
+            long target = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= target && seen > 0) {
+                    return Math.min(upperBoundOf(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        double meanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        private static int bucketOf(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) Math.max(nanos, 0);
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int mantissa = (int) (nanos >>> (exponent - SUB_BITS))
+                    & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) << SUB_BITS | mantissa;
+        }
+
+        private static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = (bucket >>> SUB_BITS) - 1;
+            long mantissa = SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1));
+            return ((mantissa + 1) << shift) - 1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String first = "MiniMaxCombined";
+        String second = "MiniMaxAlphaBeta";
+        int games = 10000;
+        int width = 3;
+        int height = -1;
+        int winLength = -1;
+        int randomMoves = 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        EngineSettings settings = EngineSettings.DEFAULTS
+                .withPlayoutBudget(PLAYOUTS_PER_MOVE);
+        Path output = null;
+        Board shape;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for "
+                            + args[i]);
+                }
+                switch (args[i++]) {
+                    case "--first":
+                        first = value;
+                        break;
+                    case "--second":
+                        second = value;
+                        break;
+                    case "--games":
+                        games = Integer.parseInt(value);
+                        break;
+                    case "--width":
+                        width = Integer.parseInt(value);
+                        break;
+                    case "--height":
+                        height = Integer.parseInt(value);
+                        break;
+                    case "--win-length":
+                        winLength = Integer.parseInt(value);
+                        break;
+                    case "--random-moves":
+                        randomMoves = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--depth":
+                        settings = settings.withMaxDepth(
+                                Integer.parseInt(value));
+                        break;
+                    case "--budget":
+                        settings = settings.withTimeBudget(
+                                Long.parseLong(value));
+                        break;
+                    case "--playouts":
+                        settings = settings.withPlayoutBudget(
+                                Long.parseLong(value));
+                        break;
+                    case "--output":
+                        output = Path.of(value);
+                        break;
+                    case "--tablebase":
+                        MiniMaxCombined.addTablebase(
+                                Tablebase.open(Path.of(value)));
+                        break;
+                    case "--book":
+                        MiniMaxCombined.addOpeningBook(
+                                OpeningBook.load(Path.of(value)));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option "
+                                + args[i - 1]);
+                }
+            }
+            for (String name : new String[]{first, second}) {
+                if (!EngineRegistry.getNames().contains(name)) {
+                    throw new IllegalArgumentException("Unknown engine " + name
+                            + ", expected one of "
+                            + EngineRegistry.getNames());
+                }
+            }
+            if (height < 0) {
+                height = width;
+            }
+            if (winLength < 0) {
+                winLength = Math.min(width, height);
+            }
+            shape = new Board(width, height, winLength);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        long start = System.nanoTime();
+        Results results = play(first, second, settings, games, shape,
+                randomMoves, threads, seed);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        report(System.out, first, second, games, shape, threads, seconds,
+                results);
+        if (output != null) {
+            try (PrintStream file = new PrintStream(
+                    Files.newOutputStream(output))) {
+                report(file, first, second, games, shape, threads, seconds,
+                        results);
+            }
+        }
+    }
+
+    private static Results play(String first, String second,
+            EngineSettings settings, int games, Board empty, int randomMoves,
+            int threads, long seed) {
+        List<SearchEngine> created
+                = Collections.synchronizedList(new ArrayList<>());
+        ThreadLocal<List<SearchEngine>> engines = ThreadLocal.withInitial(
+                () -> {
+                    List<SearchEngine> pair = List.of(
+                            EngineRegistry.create(first, settings),
+                            EngineRegistry.create(second, settings));
+                    created.addAll(pair);
+                    return pair;
+                });
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Results>> batches = new ArrayList<>();
+            for (int start = 0; start < games; start += BATCH_SIZE) {
+                int from = start;
+                int to = Math.min(games, start + BATCH_SIZE);
+                batches.add(pool.submit(() -> playBatch(engines.get(), from,
+                        to, empty, randomMoves,
+                        new SplittableRandom(seed + from))));
+            }
+            Results total = new Results();
+            for (Future<Results> batch : batches) {
+                total.add(batch.get());
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Self-play interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Self-play failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            for (SearchEngine engine : created) {
+                engine.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Play games numbered from to to, the first engine plays X in the even
+     * numbered games.
+     */
+    private static Results playBatch(List<SearchEngine> engines,
+            int from, int to, Board empty, int randomMoves,
+            SplittableRandom random) {
+        Results results = new Results();
+        // Forget the thread's earlier batches, whichever they were.
+        for (SearchEngine engine : engines) {
+            engine.clear();
+        }
+        int width = empty.getWidth();
+        int tiles = width * empty.getHeight();
+        int[] blank = new int[tiles];
+        for (int game = from; game < to; game++) {
+            int crossEngine = game % 2;
+            // The board searched for X's moves and its mirror for O's.
+            Board crossView = new Board(empty);
+            Board noughtView = new Board(empty);
+            for (int ply = 0; ply < tiles
+                    && crossView.getSearchWinner() == BLANK; ply++) {
+                boolean crossTurn = ply % 2 == 0;
+                int[] move;
+                if (ply < randomMoves) {
+                    int count = 0;
+                    for (int tile = 0; tile < tiles; tile++) {
+                        if (!crossView.isTileMarked(tile / width,
+                                tile % width)) {
+                            blank[count++] = tile;
+                        }
+                    }
+                    int tile = blank[random.nextInt(count)];
+                    move = new int[]{tile / width, tile % width};
+                } else {
+                    int engine = crossTurn ? crossEngine : 1 - crossEngine;
+                    long start = System.nanoTime();
+                    move = engines.get(engine).getBestMove(
+                            crossTurn ? crossView : noughtView);
+                    results.times[engine].record(System.nanoTime() - start);
+                }
+                crossView.makeMove(move[0], move[1], crossTurn ? X : O);
+                noughtView.makeMove(move[0], move[1], crossTurn ? O : X);
+            }
+
+            Mark winner = crossView.getSearchWinner();
+            if (winner == BLANK) {
+                results.draws++;
+            } else {
+                results.wins[winner == X ? crossEngine : 1 - crossEngine]++;
+            }
+        }
+        return results;
+    }
+
+    private static void report(PrintStream out, String first, String second,
+            int games, Board shape, int threads, double seconds,
+            Results results) {
+        out.printf("%d games of %d in a row on a %dx%d board with %d threads"
+                + " in %.2f s (%.0f games/s)%n", games, shape.getWinLength(),
+                shape.getWidth(), shape.getHeight(), threads, seconds,
+                games / seconds);
+        out.printf("%s wins %d, draws %d, %s wins %d%n", first,
+                results.wins[0], results.draws, second, results.wins[1]);
+        out.printf("%-20s %10s %10s %10s %10s %10s%n", "Move times (us)",
+                "moves", "mean", "p50", "p99", "max");
+        String[] names = {first, second};
+        for (int i = 0; i < 2; i++) {
+            MoveTimes times = results.times[i];
+            out.printf("%-20s %10d %10.1f %10.1f %10.1f %10.1f%n", names[i],
+                    times.count, times.meanNanos() / 1e3,
+                    times.percentile(0.5) / 1e3, times.percentile(0.99) / 1e3,
+                    times.maxNanos / 1e3);
+        }
+        if (SearchStats.isDetailed()) {
+            out.println(SearchMetrics.getInstance());
+        }
+    }
+}
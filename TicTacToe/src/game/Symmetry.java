@@ -0,0 +1,170 @@
+package game;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The eight rotations and reflections of a square board. Positions which are
+ * rotations or reflections of each other have the same value and equivalent
+ * best moves, so searches can treat them as one position.
+ * <p>
+ * A board which is not square only has four symmetries, the identity, the
+ * half turn and the two mirrors, so the transforms which would turn it on its
+ * side leave every tile where it is instead.
+ *
+ * @author DavidHurst
+ */
+public final class Symmetry {
+
+    /**
+     * Number of transforms, index 0 is the identity.
+     */
+    public static final int TRANSFORMS = 8;
+
+    private static final ConcurrentHashMap<Long, Symmetry> CACHE
+            = new ConcurrentHashMap<>();
+
+    private final int width;
+    private final int height;
+    private final int[][] tileMaps;
+    private final int[] inverses;
+    /**
+     * Transforms other than the identity which move at least one tile.
+     */
+    private final int[] movingTransforms;
+
+    private Symmetry(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int tiles = width * height;
+        int maxRow = height - 1;
+        int maxCol = width - 1;
+        boolean square = width == height;
+        tileMaps = new int[TRANSFORMS][tiles];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int tile = row * width + col;
+                tileMaps[0][tile] = tile;
+                tileMaps[1][tile] = square ? col * width + (maxRow - row)
+                        : tile;
+                tileMaps[2][tile] = (maxRow - row) * width + (maxCol - col);
+                tileMaps[3][tile] = square ? (maxCol - col) * width + row
+                        : tile;
+                tileMaps[4][tile] = row * width + (maxCol - col);
+                tileMaps[5][tile] = (maxRow - row) * width + col;
+                tileMaps[6][tile] = square ? col * width + row : tile;
+                tileMaps[7][tile] = square
+                        ? (maxCol - col) * width + (maxRow - row) : tile;
+            }
+        }
+        int[] moving = new int[TRANSFORMS - 1];
+        int count = 0;
+        for (int t = 1; t < TRANSFORMS; t++) {
+            if (!undoes(0, t)) {
+                moving[count++] = t;
+            }
+        }
+        movingTransforms = Arrays.copyOf(moving, count);
+        inverses = new int[TRANSFORMS];
+        for (int t = 0; t < TRANSFORMS; t++) {
+            for (int u = TRANSFORMS - 1; u >= 0; u--) {
+                if (undoes(u, t)) {
+                    inverses[t] = u;
+                }
+            }
+        }
+    }
+
+    private boolean undoes(int u, int t) {
+        for (int tile = 0; tile < tileMaps[t].length; tile++) {
+            if (tileMaps[u][tileMaps[t][tile]] != tile) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieve the symmetries of a board of the given size.
+     *
+     * @param width Number of columns
+     * @param height Number of rows
+     * @return The symmetries
+     */
+    public static Symmetry of(int width, int height) {
+        return CACHE.computeIfAbsent(((long) width << 32) | height,
+                key -> new Symmetry(width, height));
+    }
+
+    /**
+     * @param transform Index of the transform
+     * @param tile Index of a tile, {@code row * width + col}
+     * @return Index the tile is moved to by the transform
+     */
+    public int transformTile(int transform, int tile) {
+        return tileMaps[transform][tile];
+    }
+
+    /**
+     * @param transform Index of the transform
+     * @return Index of the transform which undoes it
+     */
+    public int inverse(int transform) {
+        return inverses[transform];
+    }
+
+    /**
+     * Find the transforms, other than those which move no tiles, which leave
+     * the marks on the board unchanged.
+     *
+     * @param board Board to check
+     * @return Indices of the transforms
+     */
+    public int[] stabilisers(Board board) {
+        int[] found = new int[movingTransforms.length];
+        int count = 0;
+        int tiles = width * height;
+        for (int t : movingTransforms) {
+            boolean symmetric = true;
+            for (int tile = 0; tile < tiles && symmetric; tile++) {
+                int mapped = tileMaps[t][tile];
+                symmetric = markAt(board, tile) == markAt(board, mapped);
+            }
+            if (symmetric) {
+                found[count++] = t;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Check whether a move is equivalent to one on an earlier tile, given the
+     * transforms which leave the board unchanged. Searching moves in tile
+     * order and skipping these visits one move from each group of equivalent
+     * moves.
+     *
+     * @param stabilisers Transforms found by {@link #stabilisers(Board)}
+     * @param tile Index of the tile to move on
+     * @return true if an equivalent move has a lower tile index
+     */
+    public boolean hasEarlierEquivalent(int[] stabilisers, int tile) {
+        for (int t : stabilisers) {
+            if (tileMaps[t][tile] < tile) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Mark markAt(Board board, int tile) {
+        return board.getMarkAt(tile / width, tile % width);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -1,8 +1,17 @@
 package game;
 
+import ai.AsyncMoveSearch;
+import ai.EngineRegistry;
+import ai.EngineSettings;
 import ai.MiniMaxCombined;
+import ai.OpeningBook;
+import ai.SearchEngine;
+import ai.SearchMetrics;
+import ai.SearchStats;
+import ai.Tablebase;
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
@@ -13,13 +22,35 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.Stage;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 /**
+ * The board defaults to 3x3, other games can be played by passing its size
+ * and the number of marks in a row needed to win, e.g.
+ * {@code --width=5 --height=4 --win-length=4}. A tablebase or opening book
+ * generated for the board can be given with {@code --tablebase=file} and
+ * {@code --book=file}, and the AI's engine with {@code --engine=name} from
+ * those in {@link EngineRegistry}, MiniMaxCombined by default.
+ *
  * @author DavidHurst
  */
 public class TicTacToe extends Application {
 
+    private static final String TITLE = "Tic Tac Toe";
+    private static final long AI_TIME_BUDGET_MILLIS = 2000;
+    private static final int FALLBACK_DEPTH = 2;
+    private static final long FALLBACK_TABLE_BYTES = 64L << 10;
+
     private static GridPane gameBoard;
     private static Board board;
+    private static int boardWidth, boardHeight, winLength;
+    private AsyncMoveSearch search;
+    private SearchEngine fallback;
+    private CompletableFuture<int[]> pendingMove;
+    private Stage stage;
     private AnimationTimer gameTimer;
     private MenuBar menuBar;
     private Menu gameMenu;
@@ -47,7 +78,6 @@ public class TicTacToe extends Application {
             this.setOnMouseClicked(e -> {
                 if (!board.isCrossTurn()) {
                     board.placeMark(this.row, this.col);
-                    this.update();
                 }
             });
             this.setStyle("-fx-font-size:70");
@@ -71,14 +101,40 @@ public class TicTacToe extends Application {
     }
 
     @Override
-    public void start(Stage primaryStage) {
+    public void start(Stage primaryStage) throws IOException {
+        Map<String, String> named = getParameters().getNamed();
+        if (named.containsKey("tablebase")) {
+            MiniMaxCombined.addTablebase(Tablebase.open(
+                    Path.of(named.get("tablebase"))));
+        }
+        if (named.containsKey("book")) {
+            MiniMaxCombined.addOpeningBook(OpeningBook.load(
+                    Path.of(named.get("book"))));
+        }
+        if (SearchStats.isDetailed()) {
+            SearchMetrics.register();
+        }
+        search = new AsyncMoveSearch(EngineRegistry.create(
+                named.getOrDefault("engine", "MiniMaxCombined"),
+                EngineSettings.DEFAULTS.withTimeBudget(AI_TIME_BUDGET_MILLIS)));
+        fallback = EngineRegistry.create("MiniMaxCombined",
+                EngineSettings.DEFAULTS.withMaxDepth(FALLBACK_DEPTH)
+                        .withTableBytes(FALLBACK_TABLE_BYTES));
+        Board defaults = new Board();
+        boardWidth = Integer.parseInt(named.getOrDefault("width",
+                "" + defaults.getWidth()));
+        boardHeight = Integer.parseInt(named.getOrDefault("height",
+                "" + boardWidth));
+        winLength = Integer.parseInt(named.getOrDefault("win-length",
+                "" + Math.min(boardWidth, boardHeight)));
+        stage = primaryStage;
         root = new BorderPane();
 
         root.setCenter(generateGUI());
         root.setTop(initialiseMenu());
 
         Scene scene = new Scene(root);
-        primaryStage.setTitle("Tic Tac Toe");
+        primaryStage.setTitle(TITLE);
         primaryStage.setScene(scene);
 
         runGameLoop();
@@ -86,6 +142,13 @@ public class TicTacToe extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        if (search != null) {
+            search.shutdown();
+        }
+    }
+
     /**
      * Fills and returns a GridPane with tiles, this GridPane is representative
      * of the game board.
@@ -93,10 +156,17 @@ public class TicTacToe extends Application {
      */
     private static GridPane generateGUI() {
         gameBoard = new GridPane();
-        board = new Board();
+        board = new Board(boardWidth, boardHeight, winLength);
+        board.addGameListener(new GameLog(System.out));
+        board.addGameListener(new GameListener() {
+            @Override
+            public void movePlaced(Board board, int row, int col, Mark mark) {
+                updateTile(row, col);
+            }
+        });
         gameBoard.setAlignment(Pos.CENTER);
         
-        for (int row = 0; row < board.getWidth(); row++) {
+        for (int row = 0; row < board.getHeight(); row++) {
             for (int col = 0; col < board.getWidth(); col++) {
                 Tile tile = new Tile(row, col, board.getMarkAt(row, col));
                 GridPane.setConstraints(tile, col, row);
@@ -121,18 +191,27 @@ public class TicTacToe extends Application {
 
     /**
      * Runs the main game loop which is responsible for playing the AI's turn 
-     * as long as the game is still ongoing.
+     * as long as the game is still ongoing, the game is ended when the board
+     * reports its result.
      */
     private void runGameLoop() {
+        board.addGameListener(new GameListener() {
+            @Override
+            public void gameWon(Board board, Mark winner, int row, int col) {
+                endGame();
+            }
+
+            @Override
+            public void gameDrawn(Board board) {
+                endGame();
+            }
+        });
         gameTimer = new AnimationTimer() {
             @Override
             public void handle(long now) {
-                if (board.isGameOver()) {
-                    endGame();
-                } else {
-                    if (board.isCrossTurn()) {
-                        playAI();
-                    }
+                if (!board.isGameOver() && board.isCrossTurn()
+                        && pendingMove == null) {
+                    playAI();
                 }
             }
         };
@@ -140,14 +219,74 @@ public class TicTacToe extends Application {
     }
 
     /**
-     * Analyses the current state of the board and plays the move best for the X
-     * player. Updates the tile it places a mark on also.
+     * Starts searching the current state of the board for the move best for
+     * the X player in the background. The move is played, and the tile it 
+     * places a mark on updated, on the application thread once the search 
+     * finishes; meanwhile the title shows the best move found so far. If the
+     * search fails the title says so and X plays the move of a shallow search
+     * made on the application thread instead.
+     */
+    private void playAI() {
+        Board searched = board;
+        CompletableFuture<int[]> move = search.getBestMove(board,
+                best -> Platform.runLater(() -> {
+                    if (board == searched) {
+                        stage.setTitle(TITLE + " - X considering ("
+                                + best[0] + ", " + best[1] + ")");
+                    }
+                }));
+        pendingMove = move;
+        move.whenComplete((best, failure) -> Platform.runLater(() -> {
+            if (pendingMove != move) {
+                return;
+            }
+            pendingMove = null;
+            stage.setTitle(TITLE);
+            int[] played = best;
+            if (failure != null) {
+                stage.setTitle(TITLE + " - X's search failed ("
+                        + failure.getMessage() + "), X played a "
+                        + FALLBACK_DEPTH + " ply search's move");
+                failure.printStackTrace();
+                played = fallbackMove();
+            }
+            board.placeMark(played[0], played[1]);
+        }));
+    }
+
+    /**
+     * Searches the board to FALLBACK_DEPTH, quick enough to block the
+     * application thread for.
+     * @return Coordinates of the best move found, or of the first free tile
+     * if this search fails too
+     */
+    private int[] fallbackMove() {
+        try {
+            return fallback.search(board).getMove();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return firstFreeTile();
+        }
+    }
+
+    /**
+     * @return Coordinates of the first tile without a mark
+     */
+    private int[] firstFreeTile() {
+        for (int row = 0; row < board.getHeight(); row++) {
+            for (int col = 0; col < board.getWidth(); col++) {
+                if (!board.isTileMarked(row, col)) {
+                    return new int[]{row, col};
+                }
+            }
+        }
+        throw new IllegalStateException("No free tile on the board");
+    }
+
+    /**
+     * Updates the tile a mark was placed on.
      */
-    private static void playAI() {
-        int[] move = MiniMaxCombined.getBestMove(board);
-        int row = move[0];
-        int col = move[1];
-        board.placeMark(row, col);
+    private static void updateTile(int row, int col) {
         for (Node child : gameBoard.getChildren()) {
             if (GridPane.getRowIndex(child) == row
                     && GridPane.getColumnIndex(child) == col) {
@@ -158,7 +297,17 @@ public class TicTacToe extends Application {
         }
     }
 
+    /**
+     * Abandons any search for the AI's move, stops the game loop and starts a
+     * new game.
+     */
     private void resetGame() {
+        if (pendingMove != null) {
+            pendingMove.cancel(false);
+            pendingMove = null;
+        }
+        stage.setTitle(TITLE);
+        gameTimer.stop();
         root.setCenter(generateGUI());
         runGameLoop();
     }
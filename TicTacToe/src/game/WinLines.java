@@ -0,0 +1,303 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static game.Mark.*;
+
+/**
+ * Every winning line on a board of a given width, height and win length,
+ * precomputed once as a bitmask over the tiles so that a board can be checked
+ * for a winner with one AND and compare per line rather than summing marks.
+ *
+ * @author DavidHurst
+ */
+public final class WinLines {
+
+    private static final ConcurrentHashMap<Long, WinLines> CACHE
+            = new ConcurrentHashMap<>();
+    /**
+     * Caps the weight of a line so long win lengths cannot overflow a sum.
+     */
+    private static final int MAX_WEIGHT_SHIFT = 16;
+
+    private final int width;
+    private final int height;
+    private final int length;
+    private final int[][] lines;
+    private final int[][] linesThrough;
+    private final long[] masks;
+    private final long[][] masksThrough;
+    private final int[] weights;
+    private final int[] stateValues;
+    private final int[] stateSlots;
+
+    private WinLines(int width, int height, int length) {
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        lines = generateLines(width, height, length);
+        linesThrough = indexLinesByTile(width * height, lines);
+        weights = new int[length + 1];
+        for (int marks = 1; marks <= length; marks++) {
+            weights[marks] = 1 << Math.min(2 * (marks - 1), MAX_WEIGHT_SHIFT);
+        }
+        int states = (length + 1) * (length + 1);
+        stateValues = new int[states];
+        stateSlots = new int[states];
+        for (int state = 0; state < states; state++) {
+            int crosses = state % (length + 1);
+            int noughts = state / (length + 1);
+            if (noughts == 0) {
+                stateValues[state] = weights[crosses];
+                stateSlots[state] = crosses;
+            } else if (crosses == 0) {
+                stateValues[state] = -weights[noughts];
+                stateSlots[state] = length + 1 + noughts;
+            } else {
+                stateSlots[state] = 2 * (length + 1);
+            }
+        }
+        if (width * height <= Long.SIZE) {
+            masks = new long[lines.length];
+            for (int i = 0; i < lines.length; i++) {
+                for (int tile : lines[i]) {
+                    masks[i] |= 1L << tile;
+                }
+            }
+            masksThrough = new long[linesThrough.length][];
+            for (int tile = 0; tile < linesThrough.length; tile++) {
+                masksThrough[tile] = new long[linesThrough[tile].length];
+                for (int i = 0; i < linesThrough[tile].length; i++) {
+                    masksThrough[tile][i] = masks[linesThrough[tile][i]];
+                }
+            }
+        } else {
+            masks = null;
+            masksThrough = null;
+        }
+    }
+
+    /**
+     * Retrieve the winning lines for a board, generating them the first time
+     * a board of that width, height and win length is seen.
+     *
+     * @param width Number of columns
+     * @param height Number of rows
+     * @param length Number of marks in a row needed to win
+     * @return The winning lines
+     */
+    public static WinLines of(int width, int height, int length) {
+        return CACHE.computeIfAbsent(configurationKey(width, height, length),
+                key -> new WinLines(width, height, length));
+    }
+
+    /**
+     * @return A distinct key for every board size and win length
+     */
+    static long configurationKey(int width, int height, int length) {
+        return ((long) width << 42) | ((long) height << 21) | length;
+    }
+
+    /**
+     * Generate every horizontal, vertical and diagonal run of tiles of the
+     * given length, each run is stored as the tile indices it covers.
+     */
+    private static int[][] generateLines(int width, int height, int length) {
+        List<int[]> found = new ArrayList<>();
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        for (int[] dir : directions) {
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    int endRow = row + dir[0] * (length - 1);
+                    int endCol = col + dir[1] * (length - 1);
+                    if (endRow < 0 || endRow >= height || endCol < 0
+                            || endCol >= width) {
+                        continue;
+                    }
+                    int[] line = new int[length];
+                    for (int i = 0; i < length; i++) {
+                        line[i] = (row + dir[0] * i) * width
+                                + col + dir[1] * i;
+                    }
+                    found.add(line);
+                }
+            }
+        }
+        return found.toArray(new int[0][]);
+    }
+
+    /**
+     * For every tile list the indices of the lines which pass through it.
+     */
+    private static int[][] indexLinesByTile(int tiles, int[][] lines) {
+        int[] counts = new int[tiles];
+        for (int[] line : lines) {
+            for (int tile : line) {
+                counts[tile]++;
+            }
+        }
+        int[][] through = new int[tiles][];
+        for (int tile = 0; tile < tiles; tile++) {
+            through[tile] = new int[counts[tile]];
+            counts[tile] = 0;
+        }
+        for (int i = 0; i < lines.length; i++) {
+            for (int tile : lines[i]) {
+                through[tile][counts[tile]++] = i;
+            }
+        }
+        return through;
+    }
+
+    /**
+     * Find which player, if any, has completed a line on the board.
+     *
+     * @param board Board to check
+     * @return Mark of the winning player or BLANK if neither has won
+     */
+    public Mark findWinner(Board board) {
+        BitBoard bits = board.getBitBoard();
+        if (bits != null && masks != null) {
+            return findWinner(bits.getXBits(), bits.getOBits());
+        }
+        for (int[] line : lines) {
+            Mark first = markAt(board, line[0]);
+            if (!first.isMarked()) {
+                continue;
+            }
+            int i = 1;
+            while (i < line.length && markAt(board, line[i]) == first) {
+                i++;
+            }
+            if (i == line.length) {
+                return first;
+            }
+        }
+        return BLANK;
+    }
+
+    /**
+     * Find which player, if any, has completed a line given the masks of the
+     * tiles held by each player. Only valid for boards of up to 64 tiles.
+     *
+     * @param xBits Tiles marked by X
+     * @param oBits Tiles marked by O
+     * @return Mark of the winning player or BLANK if neither has won
+     */
+    public Mark findWinner(long xBits, long oBits) {
+        for (long mask : masks) {
+            if ((xBits & mask) == mask) {
+                return X;
+            } else if ((oBits & mask) == mask) {
+                return O;
+            }
+        }
+        return BLANK;
+    }
+
+    /**
+     * Check whether the mark on the given tile completes a line, only the lines
+     * passing through that tile are examined.
+     *
+     * @param board Board to check
+     * @param tile Index of the tile, {@code row * width + col}
+     * @param mark Mark which was placed on the tile
+     * @return true if the mark completes a line
+     */
+    public boolean completesLine(Board board, int tile, Mark mark) {
+        BitBoard bits = board.getBitBoard();
+        if (bits != null && masksThrough != null) {
+            long own = mark == X ? bits.getXBits() : bits.getOBits();
+            for (long mask : masksThrough[tile]) {
+                if ((own & mask) == mask) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int lineIndex : linesThrough[tile]) {
+            int[] line = lines[lineIndex];
+            int i = 0;
+            while (i < line.length && markAt(board, line[i]) == mark) {
+                i++;
+            }
+            if (i == line.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param tile Index of the tile, {@code row * width + col}
+     * @return Number of winning lines which pass through the tile
+     */
+    public int countLinesThrough(int tile) {
+        return linesThrough[tile].length;
+    }
+
+    /**
+     * @return For every tile the indices into {@link #getLines()} of the
+     * lines through it
+     */
+    int[][] getLinesThrough() {
+        return linesThrough;
+    }
+
+    /**
+     * The weight of a line which only one player has marked, each extra mark
+     * makes a line four times as valuable as the player is that much closer
+     * to completing it.
+     *
+     * @param marks Number of the player's marks in the line
+     * @return Weight of the line, 0 for an empty line
+     */
+    public int getLineWeight(int marks) {
+        return weights[marks];
+    }
+
+    /**
+     * The state of a line is {@code crosses + noughts * (length + 1)}, so
+     * placing an X adds 1 to it and an O adds {@code length + 1}.
+     *
+     * @return Line weight of each state for X, negative for O's lines and 0
+     * for lines both players have marked
+     */
+    int[] getStateValues() {
+        return stateValues;
+    }
+
+    /**
+     * @return For each line state, the number of X's marks if O has none,
+     * {@code length + 1} plus the number of O's marks if X has none, and
+     * {@code 2 * (length + 1)} if both have marked the line
+     */
+    int[] getStateSlots() {
+        return stateSlots;
+    }
+
+    private Mark markAt(Board board, int tile) {
+        return board.getMarkAt(tile / width, tile % width);
+    }
+
+    /**
+     * @return Tile indices covered by each winning line
+     */
+    public int[][] getLines() {
+        return lines;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,102 @@
+package game;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Random keys used to hash board positions. A position's hash is the XOR of
+ * the key of every marked tile, so placing or removing a mark updates the hash
+ * with a single XOR.
+ *
+ * @author DavidHurst
+ */
+public final class Zobrist {
+
+    /**
+     * Mixed into a hash to distinguish positions where the maximising player
+     * is to move.
+     */
+    public static final long MAX_TO_MOVE = 0x9E3779B97F4A7C15L;
+
+    private static final long SEED = 0x5DEECE66DL;
+    private static final ConcurrentHashMap<Long, long[]> KEYS
+            = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Long, long[][]> SYMMETRIC_KEYS
+            = new ConcurrentHashMap<>();
+
+    private Zobrist() {
+    }
+
+    /**
+     * Retrieve the keys for a board, the key for X on a tile is at index
+     * {@code tile * 2} and the key for O at {@code tile * 2 + 1}. Keys are
+     * generated from a fixed seed so hashes are stable between runs, the seed
+     * differs for each size of board and win length so that positions from
+     * different games do not share hashes.
+     *
+     * @param width Number of columns
+     * @param height Number of rows
+     * @param length Number of marks in a row needed to win
+     * @return The keys
+     */
+    public static long[] keysFor(int width, int height, int length) {
+        long configuration = WinLines.configurationKey(width, height, length);
+        return KEYS.computeIfAbsent(configuration, c -> {
+            SplittableRandom random = new SplittableRandom(SEED + c);
+            long[] keys = new long[width * height * 2];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextLong();
+            }
+            return keys;
+        });
+    }
+
+    /**
+     * Retrieve the keys of a board as seen through each of its
+     * {@link Symmetry} transforms, {@code keys[t][tile * 3 + mark.ordinal()]}
+     * is the key of the mark on the tile the transform t moves the tile to.
+     * Blank tiles have a key of 0 so a change of mark is always two XORs.
+     *
+     * @param width Number of columns
+     * @param height Number of rows
+     * @param length Number of marks in a row needed to win
+     * @return The keys, indexed by transform
+     */
+    public static long[][] symmetricKeysFor(int width, int height,
+            int length) {
+        long configuration = WinLines.configurationKey(width, height, length);
+        return SYMMETRIC_KEYS.computeIfAbsent(configuration, c -> {
+            long[] keys = keysFor(width, height, length);
+            Symmetry symmetry = Symmetry.of(width, height);
+            int tiles = width * height;
+            long[][] symmetric = new long[Symmetry.TRANSFORMS][tiles * 3];
+            for (int t = 0; t < Symmetry.TRANSFORMS; t++) {
+                for (int tile = 0; tile < tiles; tile++) {
+                    int mapped = symmetry.transformTile(t, tile);
+                    for (Mark mark : Mark.values()) {
+                        symmetric[t][tile * 3 + mark.ordinal()]
+                                = keyOf(keys, mapped, mark);
+                    }
+                }
+            }
+            return symmetric;
+        });
+    }
+
+    /**
+     * @param keys Keys for the board
+     * @param tile Index of the tile, {@code row * width + col}
+     * @param mark Mark on the tile
+     * @return Key for the mark on the tile or 0 if the tile is blank
+     */
+    public static long keyOf(long[] keys, int tile, Mark mark) {
+        switch (mark) {
+            case X:
+                return keys[tile * 2];
+            case O:
+                return keys[tile * 2 + 1];
+            default:
+                return 0;
+        }
+    }
+}
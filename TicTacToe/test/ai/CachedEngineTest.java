@@ -0,0 +1,137 @@
+package ai;
+
+import game.Board;
+import game.Position;
+import game.Solver;
+import game.Symmetry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks moves cached in one orientation of a position are mapped back to
+ * correct moves in every other orientation.
+ *
+ * @author DavidHurst
+ */
+class CachedEngineTest {
+
+    private final Solver solver = new Solver();
+
+    @Test
+    void movesAreMappedToEveryOrientation() {
+        MoveCache cache = new MoveCache(1 << 20);
+        SearchEngine engine = EngineRegistry.create("MiniMaxCombined",
+                EngineSettings.DEFAULTS, cache);
+        SplittableRandom random = new SplittableRandom(1);
+        Set<Position> canonical = new HashSet<>();
+        int searches = 0;
+        for (int[] size : List.of(new int[]{3, 3, 3}, new int[]{4, 3, 3})) {
+            Position empty = Position.empty(size[0], size[1], size[2]);
+            for (int i = 0; i < 100; i++) {
+                Position position = Solver.randomPosition(empty, random);
+                canonical.add(position.transform(
+                        position.getCanonicalTransform()));
+                for (int t = 0; t < Symmetry.TRANSFORMS; t++) {
+                    Position transformed = position.transform(t);
+                    assertTrue(solver.isBestMove(transformed,
+                            engine.search(transformed).getMove()),
+                            transformed::toString);
+                    Board board = transformed.toBoard();
+                    assertTrue(solver.isBestMove(transformed,
+                            engine.search(board).getMove()),
+                            transformed::toString);
+                    searches += 2;
+                }
+            }
+        }
+        assertEquals(canonical.size(), cache.size());
+        assertEquals(canonical.size(), cache.getMisses());
+        assertEquals(searches - canonical.size(), cache.getHits());
+    }
+
+    @Test
+    void loadedCacheAnswersWithoutSearching(@TempDir Path directory)
+            throws IOException {
+        MoveCache cache = new MoveCache(1 << 20);
+        SearchEngine engine = EngineRegistry.create("MiniMaxCombined",
+                EngineSettings.DEFAULTS, cache);
+        SplittableRandom random = new SplittableRandom(2);
+        Position empty = Position.empty(3, 3, 3);
+        Position[] positions = new Position[50];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = Solver.randomPosition(empty, random);
+            engine.search(positions[i]);
+        }
+        Path file = directory.resolve("moves.cache");
+        cache.save(file);
+
+        MoveCache loaded = new MoveCache(1 << 20);
+        assertEquals(cache.size(), loaded.load(file));
+        SearchEngine cached = new CachedEngine(new Unsearchable(),
+                EngineSettings.DEFAULTS, loaded);
+        for (Position position : positions) {
+            for (int t = 0; t < Symmetry.TRANSFORMS; t++) {
+                Position transformed = position.transform(t);
+                assertTrue(solver.isBestMove(transformed,
+                        cached.search(transformed).getMove()),
+                        transformed::toString);
+            }
+        }
+        assertEquals(0, loaded.getMisses());
+    }
+
+    @Test
+    void stoppedSearchesAreNotCached() throws Exception {
+        MoveCache cache = new MoveCache(1 << 20);
+        SearchEngine engine = EngineRegistry.create("MiniMaxCombined",
+                EngineSettings.DEFAULTS.withTimeBudget(60_000)
+                        .withMaxDepth(30), cache);
+        Position position = Position.empty(7, 7, 5).withMove(3, 3)
+                .withMove(3, 4);
+        ExecutorService searcher = Executors.newSingleThreadExecutor();
+        try {
+            Future<SearchResult> result = searcher.submit(
+                    () -> engine.search(position));
+            // Leave time for the first depth to finish.
+            Thread.sleep(200);
+            engine.stop();
+            assertFalse(result.get(30, TimeUnit.SECONDS).isComplete());
+            assertEquals(0, cache.size());
+        } finally {
+            searcher.shutdownNow();
+        }
+
+        SearchResult full = engine.search(Position.empty(3, 3, 3));
+        assertTrue(full.isComplete());
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * Stands in for MiniMaxCombined, failing any search reaching it.
+     */
+    private static final class Unsearchable implements SearchEngine {
+
+        @Override
+        public String getName() {
+            return "MiniMaxCombined";
+        }
+
+        @Override
+        public SearchResult search(Board board) {
+            throw new AssertionError("Searched a cached position");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ai;
+
+import game.Board;
+import game.Position;
+import game.Solver;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the searches with a transposition table against plain MiniMax and
+ * the exact values of 3x3 positions.
+ *
+ * @author DavidHurst
+ */
+class MiniMaxCombinedTest {
+
+    private final Solver solver = new Solver();
+
+    @Test
+    void matchesMiniMaxOn3x3() {
+        SplittableRandom random = new SplittableRandom(1);
+        Position empty = Position.empty(3, 3, 3);
+        for (int i = 0; i < 300; i++) {
+            Position position = Solver.randomPosition(empty, random);
+            int value = solver.valueOf(position);
+            SearchResult result = MiniMaxCombined.search(position.toBoard());
+            assertTrue(solver.isBestMove(position, result.getMove()),
+                    position::toString);
+            assertEquals(value, Integer.signum(result.getScore()),
+                    position::toString);
+            // MiniMax searches 7 plies, to the end once 2 marks are placed.
+            if (position.getMoveCount() >= 2) {
+                int[] plain = MiniMax.searchRoot(position.toBoard(),
+                        MiniMax.MAX_DEPTH);
+                assertEquals(value, Integer.signum(plain[2]),
+                        position::toString);
+                assertEquals(Integer.signum(plain[2]),
+                        Integer.signum(result.getScore()));
+            }
+        }
+    }
+
+    @Test
+    void enginesFindBestMovesOn3x3() {
+        SplittableRandom random = new SplittableRandom(2);
+        Position empty = Position.empty(3, 3, 3);
+        for (String name : new String[]{"MiniMaxCombined", "MiniMaxPvs",
+            "MiniMaxAlphaBeta"}) {
+            SearchEngine engine = EngineRegistry.create(name);
+            for (int i = 0; i < 200; i++) {
+                Position position = Solver.randomPosition(empty, random);
+                SearchResult result = engine.search(position);
+                assertTrue(solver.isBestMove(position, result.getMove()),
+                        () -> name + "\n" + position);
+                assertEquals(solver.valueOf(position),
+                        Integer.signum(result.getScore()),
+                        () -> name + "\n" + position);
+            }
+        }
+    }
+
+    @Test
+    void searchLeavesBoardUnchanged() {
+        SplittableRandom random = new SplittableRandom(3);
+        Position empty = Position.empty(4, 4, 3);
+        SearchEngine engine = EngineRegistry.create("MiniMaxCombined",
+                EngineSettings.DEFAULTS.withMaxDepth(4));
+        for (int i = 0; i < 50; i++) {
+            Board board = Solver.randomPosition(empty, random).toBoard();
+            long hash = board.getHash();
+            int potential = board.getLinePotential();
+            engine.search(board);
+            assertEquals(hash, board.getHash());
+            assertEquals(potential, board.getLinePotential());
+            assertEquals(0, board.getSearchPly());
+        }
+    }
+}
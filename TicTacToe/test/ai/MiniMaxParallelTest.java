@@ -0,0 +1,66 @@
+package ai;
+
+import game.Position;
+import game.Solver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the parallel searches find the moves and values the sequential
+ * search does.
+ *
+ * @author DavidHurst
+ */
+class MiniMaxParallelTest {
+
+    private final List<SearchEngine> engines = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        for (SearchEngine engine : engines) {
+            engine.shutdown();
+        }
+    }
+
+    private SearchEngine create(String name, int depth) {
+        SearchEngine engine = EngineRegistry.create(name,
+                EngineSettings.DEFAULTS.withThreads(4).withMaxDepth(depth));
+        engines.add(engine);
+        return engine;
+    }
+
+    @Test
+    void parallelMatchesSequential() {
+        assertMatchesSequential("MiniMaxParallel");
+    }
+
+    @Test
+    void lazySmpMatchesSequential() {
+        assertMatchesSequential("MiniMaxLazySmp");
+    }
+
+    private void assertMatchesSequential(String name) {
+        SplittableRandom random = new SplittableRandom(1);
+        int[][] boards = {{3, 3, 3, 12}, {4, 4, 3, 4}, {5, 5, 4, 3}};
+        for (int[] size : boards) {
+            SearchEngine sequential = create("MiniMaxCombined", size[3]);
+            SearchEngine parallel = create(name, size[3]);
+            Position empty = Position.empty(size[0], size[1], size[2]);
+            for (int i = 0; i < 40; i++) {
+                Position position = Solver.randomPosition(empty, random);
+                SearchResult expected = sequential.search(position);
+                SearchResult actual = parallel.search(position);
+                assertEquals(expected.getScore(), actual.getScore(),
+                        position::toString);
+                assertArrayEquals(expected.getMove(), actual.getMove(),
+                        position::toString);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ai;
+
+import game.Board;
+import game.Mark;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks a Monte Carlo search can be stopped before its budget is used up.
+ *
+ * @author DavidHurst
+ */
+class MonteCarloTreeSearchTest {
+
+    @Test
+    void stopReturnsTheBestMoveSoFar() throws Exception {
+        for (int threads : new int[]{1, 2}) {
+            MonteCarloTreeSearch engine
+                    = new MonteCarloTreeSearch(threads, 3_600_000, 0);
+            Board board = new Board(7, 7, 5);
+            board.makeMove(3, 3, Mark.O);
+            ExecutorService searcher = Executors.newSingleThreadExecutor();
+            try {
+                Future<SearchResult> result = searcher.submit(
+                        () -> engine.search(board));
+                Thread.sleep(200);
+                engine.stop();
+                SearchResult found = result.get(30, TimeUnit.SECONDS);
+                assertFalse(found.isComplete());
+                assertFalse(board.isTileMarked(found.getMove()[0],
+                        found.getMove()[1]));
+                assertTrue(found.getStats().getNodes() > 0);
+
+                // A stop only ends the search it was sent to.
+                MonteCarloTreeSearch next
+                        = new MonteCarloTreeSearch(threads, 0, 1000);
+                next.stop();
+                assertTrue(next.search(board).isComplete());
+                next.shutdown();
+            } finally {
+                searcher.shutdownNow();
+                engine.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ai;
+
+import game.Board;
+import game.Position;
+import game.Solver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the moves of a generated opening book against the exact values of
+ * the positions.
+ *
+ * @author DavidHurst
+ */
+class OpeningBookTest {
+
+    private final Solver solver = new Solver();
+
+    @Test
+    void movesKeepTheValue(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("3x3.book");
+        OpeningBook.generate(new Board(3, 3, 3), 3, 0, file);
+        OpeningBook book = OpeningBook.load(file);
+        assertEquals(3, book.getPlies());
+
+        Position empty = Position.empty(3, 3, 3);
+        assertBookMove(book, empty);
+        int checked = 1;
+        for (int first = 0; first < 9; first++) {
+            Position afterFirst = empty.withMove(first / 3, first % 3);
+            for (int second = 0; second < 9; second++) {
+                if (!afterFirst.isTileMarked(second / 3, second % 3)) {
+                    assertBookMove(book,
+                            afterFirst.withMove(second / 3, second % 3));
+                    checked++;
+                }
+            }
+        }
+        assertEquals(1 + 9 * 8, checked);
+    }
+
+    private void assertBookMove(OpeningBook book, Position position) {
+        int[] move = book.getBestMove(position.toBoard());
+        assertNotNull(move, position::toString);
+        assertTrue(solver.isBestMove(position, move), position::toString);
+    }
+
+    @Test
+    void missesPositionsPastTheBook(@TempDir Path directory)
+            throws IOException {
+        Path file = directory.resolve("3x3.book");
+        OpeningBook.generate(new Board(3, 3, 3), 3, 0, file);
+        OpeningBook book = OpeningBook.load(file);
+        Position position = Position.empty(3, 3, 3).withMove(0, 0)
+                .withMove(1, 1).withMove(2, 2).withMove(0, 2);
+        assertNull(book.getBestMove(position.toBoard()));
+        assertNull(book.getBestMove(new Board(4, 4, 3)));
+    }
+}
@@ -0,0 +1,79 @@
+package ai;
+
+import game.Board;
+import game.Position;
+import game.Solver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static game.Mark.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the moves of generated tablebases against the exact values of the
+ * positions.
+ *
+ * @author DavidHurst
+ */
+class TablebaseTest {
+
+    private final Solver solver = new Solver();
+
+    @Test
+    void movesKeepTheValue(@TempDir Path directory) throws IOException {
+        SplittableRandom random = new SplittableRandom(1);
+        int[][] boards = {{3, 3, 3}, {4, 3, 3}};
+        for (int[] size : boards) {
+            Path file = directory.resolve(size[0] + "x" + size[1] + ".tb");
+            Tablebase.generate(size[0], size[1], size[2], file);
+            Tablebase tablebase = Tablebase.open(file);
+            Position empty = Position.empty(size[0], size[1], size[2]);
+            for (int i = 0; i < 300; i++) {
+                Position position = Solver.randomPosition(empty, random);
+                int[] move = tablebase.getBestMove(position.toBoard());
+                assertNotNull(move, position::toString);
+                assertTrue(solver.isBestMove(position, move),
+                        position::toString);
+                assertSwappedMoveKeepsValue(tablebase, position, random);
+            }
+        }
+    }
+
+    /**
+     * Play one random move for X then look O's reply up with the marks
+     * swapped, as the engines search for O.
+     */
+    private void assertSwappedMoveKeepsValue(Tablebase tablebase,
+            Position position, SplittableRandom random) {
+        int width = position.getWidth();
+        int tile;
+        do {
+            tile = random.nextInt(width * position.getHeight());
+        } while (position.isTileMarked(tile / width, tile % width));
+        Position next = position.withMove(tile / width, tile % width);
+        Board swapped = Position.of(next.getOBits(), next.getXBits(), width,
+                next.getHeight(), next.getWinLength()).toBoard();
+        int[] move = tablebase.getBestMove(swapped);
+        if (next.isGameOver()) {
+            assertNull(move, next::toString);
+        } else {
+            assertNotNull(move, next::toString);
+            assertEquals(O, next.getTurn());
+            assertTrue(solver.isBestMove(next, move), next::toString);
+        }
+    }
+
+    @Test
+    void coversOnlyItsBoard(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("3x3.tb");
+        Tablebase.generate(3, 3, 3, file);
+        Tablebase tablebase = Tablebase.open(file);
+        assertTrue(tablebase.covers(new Board(3, 3, 3)));
+        assertFalse(tablebase.covers(new Board(4, 3, 3)));
+        assertNull(tablebase.getBestMove(new Board(3, 3, 2)));
+    }
+}
@@ -0,0 +1,128 @@
+package game;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static game.Mark.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the state kept up to date as moves are made and unmade against the
+ * same state recomputed from the marks.
+ *
+ * @author DavidHurst
+ */
+class BoardTest {
+
+    private static final int[][] SIZES = {{3, 3, 3}, {4, 4, 3}, {5, 4, 4}};
+
+    @Test
+    void unmakeMoveRestoresState() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int[] size : SIZES) {
+            for (int game = 0; game < 200; game++) {
+                Board board = new Board(size[0], size[1], size[2]);
+                playAndUnmake(board, random, true);
+                assertEquals(0, board.getSearchPly());
+                assertEquals(new Board(size[0], size[1], size[2]).getHash(),
+                        board.getHash());
+            }
+        }
+    }
+
+    /**
+     * Play random moves to the end of the game, checking each position as it
+     * is reached and again after the moves following it are unmade.
+     */
+    private static void playAndUnmake(Board board, SplittableRandom random,
+            boolean crossTurn) {
+        if (board.getSearchWinner() != BLANK || !board.anyMovesAvailable()) {
+            return;
+        }
+        int width = board.getWidth();
+        int tile;
+        do {
+            tile = random.nextInt(width * board.getHeight());
+        } while (board.isTileMarked(tile / width, tile % width));
+        long hash = board.getHash();
+        long canonical = board.getCanonicalHash();
+        board.makeMove(tile / width, tile % width, crossTurn ? X : O);
+        assertEquals(recomputeWinner(board), board.getSearchWinner());
+        assertLinesMatchMarks(board);
+
+        playAndUnmake(board, random, !crossTurn);
+        board.unmakeMove();
+        assertFalse(board.isTileMarked(tile / width, tile % width));
+        assertEquals(hash, board.getHash());
+        assertEquals(canonical, board.getCanonicalHash());
+        assertEquals(BLANK, board.getSearchWinner());
+        assertLinesMatchMarks(board);
+    }
+
+    @Test
+    void hashesAgreeAcrossSymmetries() {
+        SplittableRandom random = new SplittableRandom(2);
+        for (int[] size : SIZES) {
+            Position empty = Position.empty(size[0], size[1], size[2]);
+            for (int i = 0; i < 200; i++) {
+                Position position = Solver.randomPosition(empty, random);
+                long canonical = position.toBoard().getCanonicalHash();
+                for (int t = 0; t < Symmetry.TRANSFORMS; t++) {
+                    assertEquals(canonical, position.transform(t).toBoard()
+                            .getCanonicalHash());
+                }
+            }
+        }
+    }
+
+    private static Mark recomputeWinner(Board board) {
+        for (int[] line : board.getWinLines().getLines()) {
+            Mark first = markAt(board, line[0]);
+            boolean complete = first != BLANK;
+            for (int tile : line) {
+                complete &= markAt(board, tile) == first;
+            }
+            if (complete) {
+                return first;
+            }
+        }
+        return BLANK;
+    }
+
+    /**
+     * Assert the open line counts and line potential are those of the marks
+     * on the board.
+     */
+    private static void assertLinesMatchMarks(Board board) {
+        WinLines winLines = board.getWinLines();
+        int length = board.getWinLength();
+        int[][] open = new int[2][length + 1];
+        int potential = 0;
+        for (int[] line : winLines.getLines()) {
+            int crosses = 0, noughts = 0;
+            for (int tile : line) {
+                Mark mark = markAt(board, tile);
+                crosses += mark == X ? 1 : 0;
+                noughts += mark == O ? 1 : 0;
+            }
+            if (crosses > 0 && noughts == 0) {
+                open[0][crosses]++;
+                potential += winLines.getLineWeight(crosses);
+            } else if (noughts > 0 && crosses == 0) {
+                open[1][noughts]++;
+                potential -= winLines.getLineWeight(noughts);
+            }
+        }
+        for (int marks = 1; marks <= length; marks++) {
+            assertEquals(open[0][marks], board.countOpenLines(X, marks));
+            assertEquals(open[1][marks], board.countOpenLines(O, marks));
+        }
+        assertEquals(potential, board.getLinePotential());
+    }
+
+    private static Mark markAt(Board board, int tile) {
+        return board.getMarkAt(tile / board.getWidth(),
+                tile % board.getWidth());
+    }
+}
@@ -0,0 +1,99 @@
+package game;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static game.Mark.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author DavidHurst
+ */
+class PositionTest {
+
+    private static final int[][] SIZES = {{3, 3, 3}, {4, 4, 3}, {5, 4, 4},
+        {8, 8, 5}};
+
+    @Test
+    void roundTripsThroughBoard() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int[] size : SIZES) {
+            Position empty = Position.empty(size[0], size[1], size[2]);
+            for (int i = 0; i < 500; i++) {
+                Position position = Solver.randomPosition(empty, random);
+                Board board = position.toBoard();
+                assertEquals(position, Position.of(board));
+                assertEquals(position, Position.of(position.getXBits(),
+                        position.getOBits(), size[0], size[1], size[2]));
+                assertEquals(board.isCrossTurn(), position.getTurn() == X);
+                for (int row = 0; row < size[1]; row++) {
+                    for (int col = 0; col < size[0]; col++) {
+                        assertEquals(position.getMarkAt(row, col),
+                                board.getMarkAt(row, col));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void withMoveMatchesMakeMove() {
+        SplittableRandom random = new SplittableRandom(2);
+        for (int[] size : SIZES) {
+            int width = size[0];
+            for (int game = 0; game < 100; game++) {
+                Position position = Position.empty(width, size[1], size[2]);
+                Board board = new Board(width, size[1], size[2]);
+                while (!position.isGameOver()) {
+                    int tile;
+                    do {
+                        tile = random.nextInt(width * size[1]);
+                    } while (position.isTileMarked(tile / width,
+                            tile % width));
+                    Mark turn = position.getTurn();
+                    position = position.withMove(tile / width, tile % width);
+                    board.makeMove(tile / width, tile % width, turn);
+                    assertEquals(board.getSearchWinner(),
+                            position.getWinner());
+                    assertEquals(position, Position.of(board));
+                }
+                assertEquals(board.getSearchWinner() != BLANK
+                        || !board.anyMovesAvailable(), position.isGameOver());
+            }
+        }
+    }
+
+    @Test
+    void equivalentPositionsShareCanonicalOrientation() {
+        SplittableRandom random = new SplittableRandom(3);
+        for (int[] size : SIZES) {
+            Position empty = Position.empty(size[0], size[1], size[2]);
+            for (int i = 0; i < 200; i++) {
+                Position position = Solver.randomPosition(empty, random);
+                Position canonical = position.transform(
+                        position.getCanonicalTransform());
+                for (int t = 0; t < Symmetry.TRANSFORMS; t++) {
+                    Position turned = position.transform(t);
+                    assertEquals(canonical, turned.transform(
+                            turned.getCanonicalTransform()));
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidMoves() {
+        Position position = Position.empty(3, 3, 3).withMove(1, 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> position.withMove(1, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> position.withMove(3, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> position.withMove(0, 0, BLANK));
+        assertThrows(IllegalArgumentException.class,
+                () -> Position.of(1, 1, 3, 3, 3));
+        assertThrows(IllegalArgumentException.class,
+                () -> Position.empty(9, 8, 3));
+    }
+}
@@ -0,0 +1,93 @@
+package game;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static game.Mark.*;
+
+/**
+ * Exact game values of small boards for checking the engines against,
+ * solved by a plain memoised negamax over {@link Position}s which shares no
+ * code with the engines' searches.
+ *
+ * @author DavidHurst
+ */
+public final class Solver {
+
+    private final Map<Position, Integer> values = new HashMap<>();
+
+    /**
+     * @param position Position to solve
+     * @return 1 if the player to move wins with best play, 0 for a draw and
+     * -1 for a loss
+     */
+    public int valueOf(Position position) {
+        Integer known = values.get(position);
+        if (known != null) {
+            return known;
+        }
+        int value;
+        if (position.getWinner() != BLANK) {
+            // Only the player who has just moved can have completed a line.
+            value = -1;
+        } else if (position.isGameOver()) {
+            value = 0;
+        } else {
+            value = -1;
+            for (int row = 0; row < position.getHeight(); row++) {
+                for (int col = 0; col < position.getWidth(); col++) {
+                    if (!position.isTileMarked(row, col)) {
+                        value = Math.max(value,
+                                -valueOf(position.withMove(row, col)));
+                    }
+                }
+            }
+        }
+        values.put(position, value);
+        return value;
+    }
+
+    /**
+     * @param position Position before the move
+     * @param move Row and column of the move
+     * @return true if the move is legal and keeps the value of the position
+     * for the player making it
+     */
+    public boolean isBestMove(Position position, int[] move) {
+        if (move[0] < 0 || move[0] >= position.getHeight() || move[1] < 0
+                || move[1] >= position.getWidth()
+                || position.isTileMarked(move[0], move[1])) {
+            return false;
+        }
+        return -valueOf(position.withMove(move[0], move[1]))
+                == valueOf(position);
+    }
+
+    /**
+     * @param empty Empty position of the board to play on
+     * @param random Source of the moves
+     * @return A position reached by random moves where the game is not over
+     * and X is to move
+     */
+    public static Position randomPosition(Position empty,
+            SplittableRandom random) {
+        int tiles = empty.getWidth() * empty.getHeight();
+        while (true) {
+            Position position = empty;
+            int moves = 2 * random.nextInt((tiles + 1) / 2);
+            for (int i = 0; i < moves && !position.isGameOver(); i++) {
+                int tile;
+                do {
+                    tile = random.nextInt(tiles);
+                } while (position.isTileMarked(tile / empty.getWidth(),
+                        tile % empty.getWidth()));
+                position = position.withMove(tile / empty.getWidth(),
+                        tile % empty.getWidth());
+            }
+            if (!position.isGameOver() && position.getTurn() == X) {
+                return position;
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package benchmark;
+
+import ai.EngineRegistry;
+import ai.SearchEngine;
+import ai.SearchResult;
+import game.Board;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of getBestMove for each engine on every position of
+ * the corpus. The nodes counter reports nodes searched per millisecond, run
+ * with {@code -prof gc} to also report the allocation rate. Any engine in
+ * {@link EngineRegistry} can be given with {@code -p engine=name}.
+ *
+ * @author DavidHurst
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    @Param({"MiniMax", "MiniMaxImproved", "MiniMaxAlphaBeta",
+        "MiniMaxCombined", "MiniMaxPvs"})
+    public String engine;
+
+    @Param({"3", "4", "5"})
+    public int width;
+
+    @Param({"opening", "middle", "endgame"})
+    public String phase;
+
+    private Board board;
+    private SearchEngine search;
+
+    /**
+     * Nodes searched, reported as a rate alongside the operations.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+
+        public long nodes;
+    }
+
+    @Setup(Level.Trial)
+    public void loadPosition() {
+        board = Positions.load(width, phase);
+        search = EngineRegistry.create(engine);
+    }
+
+    /**
+     * Empty the engine's transposition table so every search starts from
+     * nothing rather than looking up the previous search's result.
+     */
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        search.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        search.shutdown();
+    }
+
+    @Benchmark
+    public int[] getBestMove(Nodes counter) {
+        SearchResult result = search.search(board);
+        counter.nodes += result.getStats().getNodes();
+        return result.getMove();
+    }
+}
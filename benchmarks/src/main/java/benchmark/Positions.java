@@ -0,0 +1,80 @@
+package benchmark;
+
+import game.Board;
+
+/**
+ * Fixed corpus of positions the engines are benchmarked on. Each board width
+ * has an opening, middle-game and endgame position with X to move. Positions
+ * are written row by row, rows separated by '/', with '.' for a blank tile.
+ * <p>
+ * The openings on larger boards already have some marks placed so that the
+ * engines without a transposition table finish a search in a reasonable time,
+ * on 5x5 boards the opening has 13 blank tiles.
+ *
+ * @author DavidHurst
+ */
+final class Positions {
+
+    private static final String[][] CORPUS = {
+        // 3x3
+        {"O../.X./...", "XO./.X./..O", "XOX/OO./X.."},
+        // 4x4
+        {"X.../.O../..../....", "XO../.XO./..X./O...",
+            "XOXO/OXO./X.O./.X.."},
+        // 5x5
+        {"X.O.X/.X.O./..XO./O..O./.X.OX", "XOO.X/.X.O./X.XO./O..O./.X.OX",
+            "XOO.X/OX.O./X.XO./O..OX/.X.OX"}
+    };
+    private static final String[] PHASES = {"opening", "middle", "endgame"};
+
+    private Positions() {
+    }
+
+    /**
+     * Build a board holding one of the corpus positions.
+     *
+     * @param width Width of the board, 3 to 5
+     * @param phase "opening", "middle" or "endgame"
+     * @return The board with X to move
+     */
+    static Board load(int width, String phase) {
+        String[] rows = CORPUS[width - 3][phaseIndex(phase)].split("/");
+        int tiles = width * width;
+        int[] crosses = new int[tiles];
+        int[] noughts = new int[tiles];
+        int crossCount = 0;
+        int noughtCount = 0;
+        for (int row = 0; row < width; row++) {
+            for (int col = 0; col < width; col++) {
+                char mark = rows[row].charAt(col);
+                if (mark == 'X') {
+                    crosses[crossCount++] = row * width + col;
+                } else if (mark == 'O') {
+                    noughts[noughtCount++] = row * width + col;
+                }
+            }
+        }
+        if (crossCount != noughtCount) {
+            throw new IllegalStateException("Position is not X to move");
+        }
+        // Marks can only be placed in turn, X first.
+        Board board = new Board(width);
+        for (int i = 0; i < crossCount; i++) {
+            board.placeMark(crosses[i] / width, crosses[i] % width);
+            board.placeMark(noughts[i] / width, noughts[i] % width);
+        }
+        if (board.isGameOver()) {
+            throw new IllegalStateException("Position is already decided");
+        }
+        return board;
+    }
+
+    private static int phaseIndex(String phase) {
+        for (int i = 0; i < PHASES.length; i++) {
+            if (PHASES[i].equals(phase)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown phase " + phase);
+    }
+}
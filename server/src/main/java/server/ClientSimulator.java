@@ -0,0 +1,407 @@
+package server;
+
+import game.Mark;
+import game.Position;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static game.Mark.*;
+
+/**
+ * Load tests a {@link GameServer} by playing games against it from many
+ * clients at once, each playing random legal moves as O, and reports the
+ * throughput along with the latency percentiles of each kind of request and
+ * the count of each response status. With {@code --analyse} the clients
+ * instead play both sides of their games themselves, asking the server's
+ * best move service for each of X's moves, so that many clients ask about
+ * the same positions at once.
+ * <p>
+ * Usage: {@code java -cp server/target/classes:TicTacToe/target/classes
+ * server.ClientSimulator [options]}
+ * <pre>
+ * --host name        Host of the server, default localhost
+ * --port n           Port of the server, default 8080
+ * --clients n        Games played at once, default 100
+ * --games n          Number of games, default 1000
+ * --width n          Width of the board, default 3
+ * --height n         Height of the board, default the width
+ * --win-length n     Marks in a row needed to win, default the smaller side
+ * --engine name      Engine to play against, default the server's
+ * --deadline ms      Deadline of each move, default the server's
+ * --seed n           Seed of the clients' moves, default 1
+ * --analyse true     Ask for best moves rather than play games, default
+ *                    false
+ * </pre>
+ * A move answered with 503 or 504 leaves the game unchanged and is retried,
+ * a game is abandoned after {@value #MAX_RETRIES} failures in a row.
+ *
+ * @author DavidHurst
+ */
+public final class ClientSimulator {
+
+    private static final int MAX_RETRIES = 10;
+    private static final String[] KINDS = {"start", "move", "end",
+        "best-move"};
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final String base;
+    private final String gameQuery;
+    private final String moveQuery;
+    private final boolean analyse;
+    private final int width, height, winLength;
+
+    /**
+     * Latencies and outcomes seen by one client.
+     */
+    private static final class Results {
+
+        final long[][] latencies = new long[KINDS.length][16];
+        final int[] counts = new int[KINDS.length];
+        final Map<Integer, Long> statuses = new TreeMap<>();
+        long crossWins, noughtWins, draws, abandoned;
+
+        void record(int kind, long nanos, int status) {
+            if (counts[kind] == latencies[kind].length) {
+                latencies[kind] = Arrays.copyOf(latencies[kind],
+                        counts[kind] * 2);
+            }
+            latencies[kind][counts[kind]++] = nanos;
+            statuses.merge(status, 1L, Long::sum);
+        }
+    }
+
+    private ClientSimulator(String base, String gameQuery, String moveQuery,
+            boolean analyse, int width, int height, int winLength) {
+        this.base = base;
+        this.gameQuery = gameQuery;
+        this.moveQuery = moveQuery;
+        this.analyse = analyse;
+        this.width = width;
+        this.height = height;
+        this.winLength = winLength;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = "localhost";
+        int port = 8080;
+        int clients = 100;
+        int games = 1000;
+        int width = 3;
+        int height = -1;
+        int winLength = -1;
+        String engine = null;
+        String deadline = null;
+        long seed = 1;
+        boolean analyse = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for "
+                            + args[i]);
+                }
+                switch (args[i++]) {
+                    case "--host":
+                        host = value;
+                        break;
+                    case "--port":
+                        port = Integer.parseInt(value);
+                        break;
+                    case "--clients":
+                        clients = Integer.parseInt(value);
+                        break;
+                    case "--games":
+                        games = Integer.parseInt(value);
+                        break;
+                    case "--width":
+                        width = Integer.parseInt(value);
+                        break;
+                    case "--height":
+                        height = Integer.parseInt(value);
+                        break;
+                    case "--win-length":
+                        winLength = Integer.parseInt(value);
+                        break;
+                    case "--engine":
+                        engine = value;
+                        break;
+                    case "--deadline":
+                        deadline = "" + Long.parseLong(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--analyse":
+                        analyse = Boolean.parseBoolean(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option "
+                                + args[i - 1]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (height < 0) {
+            height = width;
+        }
+        if (winLength < 0) {
+            winLength = Math.min(width, height);
+        }
+        String gameQuery = "width=" + width + "&height=" + height
+                + "&win-length=" + winLength
+                + (engine != null ? "&engine=" + engine : "")
+                + (deadline != null ? "&deadline=" + deadline : "");
+        String moveQuery = deadline != null ? "&deadline=" + deadline : "";
+        ClientSimulator simulator = new ClientSimulator("http://" + host + ":"
+                + port, gameQuery, moveQuery, analyse, width, height,
+                winLength);
+
+        AtomicInteger started = new AtomicInteger();
+        List<Results> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        int total = games;
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            Results own = new Results();
+            SplittableRandom random = new SplittableRandom(seed + i);
+            results.add(own);
+            Thread thread = new Thread(() -> {
+                while (started.getAndIncrement() < total) {
+                    if (simulator.analyse) {
+                        simulator.analyseGame(random, own);
+                    } else {
+                        simulator.playGame(random, own);
+                    }
+                }
+            }, "client-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        report(games, clients, seconds, results);
+    }
+
+    private void playGame(SplittableRandom random, Results results) {
+        String[] game = send("POST", "/games?" + gameQuery, 0, results);
+        if (game == null) {
+            results.abandoned++;
+            return;
+        }
+        String id = field(game, "game");
+        int failures = 0;
+        while (field(game, "status").equals("playing")) {
+            String[] rows = field(game, "board").split("/");
+            List<int[]> blanks = new ArrayList<>();
+            for (int row = 0; row < rows.length; row++) {
+                for (int col = 0; col < rows[row].length(); col++) {
+                    if (rows[row].charAt(col) == '.') {
+                        blanks.add(new int[]{row, col});
+                    }
+                }
+            }
+            int[] move = blanks.get(random.nextInt(blanks.size()));
+            String[] next = send("POST", "/games/" + id + "/moves?row="
+                    + move[0] + "&col=" + move[1] + moveQuery, 1, results);
+            if (next != null) {
+                game = next;
+                failures = 0;
+            } else if (++failures == MAX_RETRIES) {
+                break;
+            }
+        }
+        switch (field(game, "status")) {
+            case "X-wins":
+                results.crossWins++;
+                break;
+            case "O-wins":
+                results.noughtWins++;
+                break;
+            case "draw":
+                results.draws++;
+                break;
+            default:
+                results.abandoned++;
+        }
+        send("DELETE", "/games/" + id, 2, results);
+    }
+
+    /**
+     * Play a game locally, X playing the moves the server suggests and O
+     * random moves.
+     */
+    private void analyseGame(SplittableRandom random, Results results) {
+        Position position = Position.empty(width, height, winLength);
+        while (!position.isGameOver()) {
+            int[] move = null;
+            if (position.getTurn() == X) {
+                String[] answer = send("GET", "/best-move?board="
+                        + describe(position) + "&win-length=" + winLength
+                        + moveQuery, 3, results);
+                if (answer == null) {
+                    results.abandoned++;
+                    return;
+                }
+                String[] coordinates = field(answer, "move").split(",");
+                move = new int[]{Integer.parseInt(coordinates[0]),
+                        Integer.parseInt(coordinates[1])};
+            } else {
+                List<int[]> blanks = new ArrayList<>();
+                for (int row = 0; row < height; row++) {
+                    for (int col = 0; col < width; col++) {
+                        if (!position.isTileMarked(row, col)) {
+                            blanks.add(new int[]{row, col});
+                        }
+                    }
+                }
+                move = blanks.get(random.nextInt(blanks.size()));
+            }
+            position = position.withMove(move[0], move[1]);
+        }
+        Mark winner = position.getWinner();
+        if (winner == X) {
+            results.crossWins++;
+        } else if (winner == O) {
+            results.noughtWins++;
+        } else {
+            results.draws++;
+        }
+    }
+
+    private static String describe(Position position) {
+        StringBuilder board = new StringBuilder();
+        for (int row = 0; row < position.getHeight(); row++) {
+            if (row > 0) {
+                board.append('/');
+            }
+            for (int col = 0; col < position.getWidth(); col++) {
+                Mark mark = position.getMarkAt(row, col);
+                board.append(mark.isMarked() ? mark.getMark() : '.');
+            }
+        }
+        return board.toString();
+    }
+
+    /**
+     * @return Fields of a successful response or null if it failed
+     */
+    private String[] send(String method, String path, int kind,
+            Results results) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        long start = System.nanoTime();
+        int status;
+        String body;
+        try {
+            HttpResponse<String> response = client.send(request,
+                    HttpResponse.BodyHandlers.ofString());
+            status = response.statusCode();
+            body = response.body();
+        } catch (IOException e) {
+            status = 0;
+            body = "";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Client interrupted", e);
+        }
+        results.record(kind, System.nanoTime() - start, status);
+        return status / 100 == 2 ? body.trim().split(" ") : null;
+    }
+
+    private static String field(String[] fields, String name) {
+        for (String field : fields) {
+            if (field.startsWith(name + "=")) {
+                return field.substring(name.length() + 1);
+            }
+        }
+        return "";
+    }
+
+    private static void report(int games, int clients, double seconds,
+            List<Results> results) {
+        long requests = 0, crossWins = 0, noughtWins = 0, draws = 0;
+        long abandoned = 0;
+        Map<Integer, Long> statuses = new TreeMap<>();
+        for (Results client : results) {
+            crossWins += client.crossWins;
+            noughtWins += client.noughtWins;
+            draws += client.draws;
+            abandoned += client.abandoned;
+            client.statuses.forEach((status, count) -> statuses.merge(status,
+                    count, Long::sum));
+        }
+        for (long count : statuses.values()) {
+            requests += count;
+        }
+        System.out.printf("%d games by %d clients in %.2f s (%.0f games/s, "
+                + "%.0f requests/s)%n", games, clients, seconds,
+                games / seconds, requests / seconds);
+        System.out.printf("X wins %d, draws %d, O wins %d, abandoned %d%n",
+                crossWins, draws, noughtWins, abandoned);
+        System.out.println("Responses by status " + statuses
+                + (statuses.containsKey(0) ? ", 0 is a failed connection"
+                        : ""));
+        System.out.printf("%-20s %10s %10s %10s %10s %10s %10s%n",
+                "Latency (ms)", "requests", "mean", "p50", "p90", "p99",
+                "max");
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            int count = 0;
+            for (Results client : results) {
+                count += client.counts[kind];
+            }
+            if (count == 0) {
+                continue;
+            }
+            long[] all = new long[count];
+            int filled = 0;
+            for (Results client : results) {
+                System.arraycopy(client.latencies[kind], 0, all, filled,
+                        client.counts[kind]);
+                filled += client.counts[kind];
+            }
+            Arrays.sort(all);
+            System.out.printf("%-20s %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                    KINDS[kind], count,
+                    count == 0 ? 0 : Arrays.stream(all).average().orElse(0)
+                            / 1e6,
+                    percentile(all, 0.5) / 1e6, percentile(all, 0.9) / 1e6,
+                    percentile(all, 0.99) / 1e6,
+                    count == 0 ? 0 : all[count - 1] / 1e6);
+        }
+    }
+
+    /**
+     * @param sorted Latencies in ascending order
+     * @param fraction Fraction of requests, between 0 and 1
+     * @return Latency which that fraction of requests took no longer than
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(sorted.length * fraction);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
@@ -0,0 +1,559 @@
+package server;
+
+import ai.EngineRegistry;
+import ai.EngineSettings;
+import ai.MoveCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import game.Position;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static game.Mark.*;
+
+/**
+ * Hosts many games at once over HTTP without the GUI, the AI playing X
+ * against clients playing O. Connections are handled by the JDK's HTTP
+ * server on a pool of threads, which wait while the AI's moves are found on
+ * the bounded pool of a {@link MoveService}. Moves for positions outside any
+ * game, as an analysis service, are found in batches by a
+ * {@link MoveBatcher}. Both look moves up in a {@link MoveCache} shared by
+ * every engine before searching, so a position searched for one game is
+ * answered at once in the next.
+ * <p>
+ * Every response is a line of text, see {@link GameSession#describe()}.
+ * <pre>
+ * POST   /games                 Start a game, the AI moves first. Optional
+ *                               width, height, win-length and engine
+ *                               parameters, by default 3x3 and the server's
+ *                               engine
+ * GET    /games/{id}            The game
+ * POST   /games/{id}/moves      Play O at the row and col parameters and
+ *                               answer with the AI's reply
+ * DELETE /games/{id}            End the game, answering with its last state
+ * GET    /best-move             X's best move in the board parameter, written
+ *                               as in the games with an optional win-length,
+ *                               answered with e.g. {@code move=1,1}
+ * GET    /stats                 Games hosted, the state of the workers and
+ *                               the cache's hits, misses and evictions
+ * </pre>
+ * Requests which search take an optional deadline parameter in milliseconds.
+ * A full queue is answered with 503 and a missed deadline with 504, leaving
+ * the game as it was. An illegal move is answered with 409. Games are ended
+ * by DELETE or, once their clients stop sending requests, after an idle
+ * timeout.
+ * <p>
+ * Usage: {@code java -cp server/target/classes:TicTacToe/target/classes
+ * server.GameServer [options]}
+ * <pre>
+ * --port n           Port to listen on, default 8080
+ * --engine name      Engine of games which do not name one, default
+ *                    MiniMaxCombined
+ * --workers n        Threads searching for moves, default every core
+ * --queue n          Searches which can wait for a worker, and positions
+ *                    which can wait for a batch worker, default 1000
+ * --http-threads n   Threads handling requests, default 256
+ * --deadline ms      Default deadline of each request, default 1000
+ * --budget ms        Time each engine searches for, default a quarter of the
+ *                    deadline
+ * --max-games n      Games hosted at once, default 100000
+ * --idle-timeout s   Time after its last request a game is ended, default
+ *                    300
+ * --batch-window us  Time to collect best move requests for, default 1000
+ * --batch-size n     Best move requests which end a batch early, default 256
+ * --cache-mb n       Memory for the cache of best moves shared by every
+ *                    engine, 0 for none, default 64
+ * --cache-file path  File the cache is loaded from at startup, if it
+ *                    exists, and saved to at shutdown
+ * </pre>
+ *
+ * @author DavidHurst
+ */
+public final class GameServer {
+
+    private final HttpServer http;
+    private final ExecutorService handlers;
+    private final MoveService moves;
+    private final MoveBatcher batcher;
+    private final MoveCache cache;
+    private final String defaultEngine;
+    private final long defaultDeadlineMillis;
+    private final long idleNanos;
+    private final Map<Long, GameSession> games = new ConcurrentHashMap<>();
+    private final Semaphore slots;
+    private final ScheduledExecutorService sweeper;
+    private final LongAdder expired = new LongAdder();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /**
+     * Status code and body of a response.
+     */
+    private static final class Response {
+
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * An error answered with its status code.
+     */
+    private static final class RequestException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * The JDK's HTTP server leaves Nagle's algorithm on unless the JVM is
+     * started with {@code -Dsun.net.httpserver.nodelay=true}, which
+     * {@link #main(String[])} sets for the servers it starts.
+     *
+     * @param port Port to listen on, 0 for any free port
+     * @param moves Service finding the AI's moves, shut down with the server
+     * @param batcher Batcher finding the best moves of positions outside any
+     * game, shut down with the server
+     * @param cache Cache of moves shared by the service and the batcher,
+     * reported with the statistics, or null if they have none
+     * @param defaultEngine Engine of games which do not name one
+     * @param defaultDeadlineMillis Deadline of requests which do not set one
+     * @param httpThreads Threads handling requests
+     * @param maxGames Games hosted at once
+     * @param idleMillis Time after its last request a game is ended
+     * @throws IOException If the port cannot be bound
+     */
+    public GameServer(int port, MoveService moves, MoveBatcher batcher,
+            MoveCache cache, String defaultEngine, long defaultDeadlineMillis,
+            int httpThreads, int maxGames, long idleMillis)
+            throws IOException {
+        this.moves = moves;
+        this.batcher = batcher;
+        this.cache = cache;
+        this.defaultEngine = defaultEngine;
+        this.defaultDeadlineMillis = defaultDeadlineMillis;
+        idleNanos = idleMillis * 1_000_000;
+        slots = new Semaphore(maxGames);
+        http = HttpServer.create(new InetSocketAddress(port), 1024);
+        handlers = Executors.newFixedThreadPool(httpThreads, runnable -> {
+            Thread thread = new Thread(runnable, "http-handler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        http.setExecutor(handlers);
+        http.createContext("/", this::handle);
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idle-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleMillis / 2);
+        sweeper.scheduleAtFixedRate(this::endIdleGames, period, period,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * End every game which has had no request for the idle timeout.
+     */
+    private void endIdleGames() {
+        for (Map.Entry<Long, GameSession> entry : games.entrySet()) {
+            if (entry.getValue().getIdleNanos() > idleNanos
+                    && games.remove(entry.getKey(), entry.getValue())) {
+                slots.release();
+                expired.increment();
+            }
+        }
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    /**
+     * Stop accepting requests and shut down the move service.
+     */
+    public void stop() {
+        http.stop(0);
+        handlers.shutdownNow();
+        sweeper.shutdownNow();
+        moves.shutdown();
+        batcher.shutdown();
+    }
+
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Response response;
+        try {
+            response = route(exchange);
+        } catch (RequestException e) {
+            response = new Response(e.status, e.getMessage());
+        } catch (RuntimeException e) {
+            response = new Response(500, "Internal error: " + e);
+        }
+        try {
+            byte[] bytes = (response.body + "\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                    "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response route(HttpExchange exchange) throws RequestException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        Map<String, String> query = parseQuery(
+                exchange.getRequestURI().getRawQuery());
+        if (path.length == 2 && path[1].equals("stats")) {
+            requireMethod(method, "GET");
+            return new Response(200, describeStats());
+        }
+        if (path.length == 2 && path[1].equals("best-move")) {
+            requireMethod(method, "GET");
+            return new Response(200, findBestMove(query));
+        }
+        if (path.length < 2 || !path[1].equals("games") || path.length > 4) {
+            throw new RequestException(404, "No such resource");
+        }
+        if (path.length == 2) {
+            requireMethod(method, "POST");
+            return new Response(201, startGame(query));
+        }
+        long id = parseLong(path[2], "game id");
+        GameSession game = games.get(id);
+        if (game == null) {
+            throw new RequestException(404, "No game " + id);
+        }
+        if (path.length == 4) {
+            if (!path[3].equals("moves")) {
+                throw new RequestException(404, "No such resource");
+            }
+            requireMethod(method, "POST");
+            int row = (int) parseLong(query.get("row"), "row");
+            int col = (int) parseLong(query.get("col"), "col");
+            try {
+                if (!game.play(row, col, moves, deadline(query))) {
+                    throw new RequestException(409, "Cannot play O at row "
+                            + row + ", column " + col);
+                }
+            } catch (TimeoutException e) {
+                throw new RequestException(504, "AI missed the deadline");
+            } catch (RejectedExecutionException e) {
+                throw new RequestException(503, "Too many moves queued");
+            }
+            return new Response(200, game.describe());
+        }
+        switch (method) {
+            case "GET":
+                return new Response(200, game.describe());
+            case "DELETE":
+                if (games.remove(id, game)) {
+                    slots.release();
+                }
+                return new Response(200, game.describe());
+            default:
+                throw new RequestException(405, "Method not allowed");
+        }
+    }
+
+    private String startGame(Map<String, String> query)
+            throws RequestException {
+        String engine = query.getOrDefault("engine", defaultEngine);
+        if (!EngineRegistry.getNames().contains(engine)) {
+            throw new RequestException(400, "Unknown engine " + engine
+                    + ", expected one of " + EngineRegistry.getNames());
+        }
+        int width = (int) parseLong(query.getOrDefault("width", "3"),
+                "width");
+        int height = (int) parseLong(query.getOrDefault("height",
+                "" + width), "height");
+        int winLength = (int) parseLong(query.getOrDefault("win-length",
+                "" + Math.min(width, height)), "win-length");
+        Position start;
+        try {
+            start = Position.empty(width, height, winLength);
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, e.getMessage());
+        }
+        if (!slots.tryAcquire()) {
+            throw new RequestException(503, "Too many games");
+        }
+        long id = nextId.getAndIncrement();
+        GameSession game;
+        try {
+            game = new GameSession(id, engine, start, moves, deadline(query));
+        } catch (TimeoutException e) {
+            slots.release();
+            throw new RequestException(504, "AI missed the deadline");
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw new RequestException(503, "Too many moves queued");
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        games.put(id, game);
+        return game.describe();
+    }
+
+    private String findBestMove(Map<String, String> query)
+            throws RequestException {
+        String board = query.get("board");
+        if (board == null) {
+            throw new RequestException(400, "Missing board");
+        }
+        String[] rows = board.split("/");
+        int width = rows[0].length();
+        int height = rows.length;
+        int winLength = (int) parseLong(query.getOrDefault("win-length",
+                "" + Math.min(width, height)), "win-length");
+        Position position;
+        try {
+            position = Position.empty(width, height, winLength);
+            for (int row = 0; row < height; row++) {
+                if (rows[row].length() != width) {
+                    throw new IllegalArgumentException("Rows differ in width");
+                }
+                for (int col = 0; col < width; col++) {
+                    char tile = rows[row].charAt(col);
+                    if (tile == 'X' || tile == 'O') {
+                        position = position.withMove(row, col,
+                                tile == 'X' ? X : O);
+                    } else if (tile != '.') {
+                        throw new IllegalArgumentException("Invalid tile "
+                                + tile);
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, e.getMessage());
+        }
+        long deadline = deadline(query);
+        CompletableFuture<int[]> found = batcher.getBestMove(position);
+        try {
+            int[] move = found.get(deadline - System.nanoTime(),
+                    TimeUnit.NANOSECONDS);
+            return "move=" + move[0] + "," + move[1];
+        } catch (TimeoutException e) {
+            throw new RequestException(504, "AI missed the deadline");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestException(503, "Interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                throw new RequestException(503, "Too many positions queued");
+            }
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+    }
+
+    private String describeStats() {
+        return "games=" + games.size() + " expired=" + expired.sum()
+                + " searched=" + moves.getSearched()
+                + " rejected=" + moves.getRejected() + " timed-out="
+                + moves.getTimedOut() + " queued=" + moves.getQueued()
+                + " active=" + moves.getActive() + " " + batcher
+                + (cache != null ? " " + cache : "");
+    }
+
+    private long deadline(Map<String, String> query) throws RequestException {
+        long millis = query.containsKey("deadline")
+                ? parseLong(query.get("deadline"), "deadline")
+                : defaultDeadlineMillis;
+        return System.nanoTime() + millis * 1_000_000;
+    }
+
+    private static void requireMethod(String method, String expected)
+            throws RequestException {
+        if (!method.equals(expected)) {
+            throw new RequestException(405, "Method not allowed");
+        }
+    }
+
+    private static long parseLong(String value, String name)
+            throws RequestException {
+        if (value == null) {
+            throw new RequestException(400, "Missing " + name);
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid " + name + " " + value);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> values = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            values.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Send responses at once rather than waiting to fill a packet, the
+        // property is read when the first HttpServer is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        int port = 8080;
+        String engine = "MiniMaxCombined";
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = 1000;
+        int httpThreads = 256;
+        long deadline = 1000;
+        long budget = -1;
+        int maxGames = 100_000;
+        long idleSeconds = 300;
+        long batchWindow = 1000;
+        int batchSize = 256;
+        long cacheMegabytes = 64;
+        Path cacheFile = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for "
+                            + args[i]);
+                }
+                switch (args[i++]) {
+                    case "--port":
+                        port = Integer.parseInt(value);
+                        break;
+                    case "--engine":
+                        engine = value;
+                        break;
+                    case "--workers":
+                        workers = Integer.parseInt(value);
+                        break;
+                    case "--queue":
+                        queue = Integer.parseInt(value);
+                        break;
+                    case "--http-threads":
+                        httpThreads = Integer.parseInt(value);
+                        break;
+                    case "--deadline":
+                        deadline = Long.parseLong(value);
+                        break;
+                    case "--budget":
+                        budget = Long.parseLong(value);
+                        break;
+                    case "--max-games":
+                        maxGames = Integer.parseInt(value);
+                        break;
+                    case "--idle-timeout":
+                        idleSeconds = Long.parseLong(value);
+                        break;
+                    case "--batch-window":
+                        batchWindow = Long.parseLong(value);
+                        break;
+                    case "--batch-size":
+                        batchSize = Integer.parseInt(value);
+                        break;
+                    case "--cache-mb":
+                        cacheMegabytes = Long.parseLong(value);
+                        break;
+                    case "--cache-file":
+                        cacheFile = Path.of(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option "
+                                + args[i - 1]);
+                }
+            }
+            if (!EngineRegistry.getNames().contains(engine)) {
+                throw new IllegalArgumentException("Unknown engine " + engine
+                        + ", expected one of " + EngineRegistry.getNames());
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (budget < 0) {
+            budget = Math.max(1, deadline / 4);
+        }
+
+        EngineSettings settings = EngineSettings.DEFAULTS
+                .withTimeBudget(budget);
+        MoveCache cache = null;
+        if (cacheMegabytes > 0) {
+            cache = new MoveCache(cacheMegabytes << 20);
+            if (cacheFile != null && Files.exists(cacheFile)) {
+                try {
+                    System.out.println("Loaded " + cache.load(cacheFile)
+                            + " cached moves from " + cacheFile);
+                } catch (IOException e) {
+                    System.err.println("Starting with an empty cache, could"
+                            + " not load " + cacheFile + ": " + e.getMessage());
+                    cache.clear();
+                }
+            }
+        }
+        MoveService moves = new MoveService(workers, queue, settings, cache);
+        MoveBatcher batcher = new MoveBatcher(engine, settings, workers,
+                queue, batchWindow, batchSize, cache);
+        GameServer server = new GameServer(port, moves, batcher, cache,
+                engine, deadline, httpThreads, maxGames, idleSeconds * 1000);
+        MoveCache saved = cache;
+        Path savedFile = cacheFile;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            if (saved != null && savedFile != null) {
+                try {
+                    saved.save(savedFile);
+                } catch (IOException e) {
+                    System.err.println("Could not save the cache to "
+                            + savedFile + ": " + e.getMessage());
+                }
+            }
+        }));
+        server.start();
+        System.out.println("Serving games on port " + server.getPort()
+                + " with " + workers + " workers");
+    }
+}
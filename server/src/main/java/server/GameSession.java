@@ -0,0 +1,122 @@
+package server;
+
+import game.Mark;
+import game.Position;
+
+import java.util.concurrent.TimeoutException;
+
+import static game.Mark.*;
+
+/**
+ * One game hosted by the server, the AI playing X and moving first against a
+ * client playing O. The game is kept as an immutable {@link Position}, a move
+ * and the AI's reply replace it together so a request which fails, for
+ * example because the AI missed its deadline, leaves the game as it was.
+ * Requests for the same game are handled one at a time. The time of the last
+ * request is kept so that games their clients have abandoned can be ended.
+ *
+ * @author DavidHurst
+ */
+final class GameSession {
+
+    private final long id;
+    private final String engine;
+    private Position position;
+    private int[] lastMove;
+    private volatile long lastAccessNanos = System.nanoTime();
+
+    /**
+     * Start a game and play the AI's first move.
+     * @throws TimeoutException If the AI missed the deadline
+     */
+    GameSession(long id, String engine, Position start, MoveService moves,
+            long deadlineNanos) throws TimeoutException {
+        this.id = id;
+        this.engine = engine;
+        position = start;
+        reply(moves, deadlineNanos);
+    }
+
+    /**
+     * Play O's move and the AI's reply.
+     * @return false if it is not O's turn or the tile cannot be marked
+     * @throws TimeoutException If the AI missed the deadline
+     */
+    synchronized boolean play(int row, int col, MoveService moves,
+            long deadlineNanos) throws TimeoutException {
+        touch();
+        if (position.isGameOver() || position.getTurn() != O
+                || row < 0 || row >= position.getHeight()
+                || col < 0 || col >= position.getWidth()
+                || position.isTileMarked(row, col)) {
+            return false;
+        }
+        Position before = position;
+        int[] beforeMove = lastMove;
+        position = position.withMove(row, col, O);
+        try {
+            reply(moves, deadlineNanos);
+        } catch (TimeoutException | RuntimeException e) {
+            position = before;
+            lastMove = beforeMove;
+            throw e;
+        }
+        return true;
+    }
+
+    private void touch() {
+        lastAccessNanos = System.nanoTime();
+    }
+
+    /**
+     * @return Time since the game was started or last requested
+     */
+    long getIdleNanos() {
+        return System.nanoTime() - lastAccessNanos;
+    }
+
+    private void reply(MoveService moves, long deadlineNanos)
+            throws TimeoutException {
+        if (position.isGameOver()) {
+            lastMove = null;
+            return;
+        }
+        int[] move = moves.getBestMove(position, engine, deadlineNanos);
+        position = position.withMove(move[0], move[1], X);
+        lastMove = move;
+    }
+
+    /**
+     * @return The game on one line, e.g.
+     * {@code game=1 status=playing ai=1,1 board=.../.X./...} with a dot for
+     * each blank tile and a slash between the rows
+     */
+    synchronized String describe() {
+        touch();
+        StringBuilder line = new StringBuilder();
+        line.append("game=").append(id).append(" status=");
+        Mark winner = position.getWinner();
+        if (winner != BLANK) {
+            line.append(winner).append("-wins");
+        } else if (position.isGameOver()) {
+            line.append("draw");
+        } else {
+            line.append("playing");
+        }
+        if (lastMove != null) {
+            line.append(" ai=").append(lastMove[0]).append(',')
+                    .append(lastMove[1]);
+        }
+        line.append(" board=");
+        for (int row = 0; row < position.getHeight(); row++) {
+            if (row > 0) {
+                line.append('/');
+            }
+            for (int col = 0; col < position.getWidth(); col++) {
+                Mark mark = position.getMarkAt(row, col);
+                line.append(mark.isMarked() ? mark.getMark() : '.');
+            }
+        }
+        return line.toString();
+    }
+}
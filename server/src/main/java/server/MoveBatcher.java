@@ -0,0 +1,339 @@
+package server;
+
+import ai.EngineRegistry;
+import ai.EngineSettings;
+import ai.MoveCache;
+import ai.SearchEngine;
+import game.Position;
+import game.Symmetry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Answers requests for X's best move in batches. Requests arriving within a
+ * short window of the first are collected, those for positions which are
+ * rotations or reflections of each other are searched once in the canonical
+ * orientation, the distinct positions are searched in parallel and each
+ * request is given the move turned back to its own orientation.
+ * <p>
+ * When many clients ask about the same few positions, as they do on small
+ * boards, most requests are answered without a search of their own at the
+ * cost of waiting up to the window. Searches wait for a worker in a bounded
+ * queue, the requests of a search which does not fit fail at once.
+ *
+ * @author DavidHurst
+ */
+public final class MoveBatcher {
+
+    private final String engineName;
+    private final EngineSettings settings;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final ThreadPoolExecutor workers;
+    private final ThreadLocal<SearchEngine> engines;
+    private final List<SearchEngine> created
+            = Collections.synchronizedList(new ArrayList<>());
+    private final Object lock = new Object();
+    private List<Request> pending = new ArrayList<>();
+    private boolean running = true;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder searched = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+
+    /**
+     * A request waiting for its batch to be searched.
+     */
+    private static final class Request {
+
+        final Position position;
+        final int transform;
+        final long arrivedNanos = System.nanoTime();
+        final CompletableFuture<int[]> move = new CompletableFuture<>();
+
+        Request(Position position) {
+            this.position = position;
+            transform = position.getCanonicalTransform();
+        }
+    }
+
+    /**
+     * The search of one distinct position, answering every request for it.
+     */
+    private final class Search implements Runnable {
+
+        final Position canonical;
+        final List<Request> waiting;
+
+        Search(Position canonical, List<Request> waiting) {
+            this.canonical = canonical;
+            this.waiting = waiting;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int[] move = engines.get().search(canonical).getMove();
+                searched.increment();
+                for (Request request : waiting) {
+                    request.move.complete(untransform(request, move));
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            } catch (Error e) {
+                fail(e);
+                throw e;
+            }
+        }
+
+        void fail(Throwable cause) {
+            for (Request request : waiting) {
+                request.move.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * @param engine Name of the engine to search with
+     * @param settings Settings of the engines, one for each worker
+     * @param threads Number of positions to search at once
+     * @param queueCapacity Number of positions which can wait for a thread
+     * @param windowMicros Time to collect a batch for after its first
+     * request arrives, in microseconds
+     * @param maxBatch Requests which end a batch early
+     */
+    public MoveBatcher(String engine, EngineSettings settings, int threads,
+            int queueCapacity, long windowMicros, int maxBatch) {
+        this(engine, settings, threads, queueCapacity, windowMicros, maxBatch,
+                null);
+    }
+
+    /**
+     * @param engine Name of the engine to search with
+     * @param settings Settings of the engines, one for each worker
+     * @param threads Number of positions to search at once
+     * @param queueCapacity Number of positions which can wait for a thread
+     * @param windowMicros Time to collect a batch for after its first
+     * request arrives, in microseconds
+     * @param maxBatch Requests which end a batch early
+     * @param cache Cache of moves the engines share, or null to always
+     * search
+     */
+    public MoveBatcher(String engine, EngineSettings settings, int threads,
+            int queueCapacity, long windowMicros, int maxBatch,
+            MoveCache cache) {
+        if (!EngineRegistry.getNames().contains(engine)) {
+            throw new IllegalArgumentException("Unknown engine " + engine
+                    + ", expected one of " + EngineRegistry.getNames());
+        }
+        engineName = engine;
+        this.settings = settings;
+        windowNanos = windowMicros * 1000;
+        this.maxBatch = maxBatch;
+        engines = ThreadLocal.withInitial(() -> {
+            SearchEngine newEngine = cache == null
+                    ? EngineRegistry.create(engineName, this.settings)
+                    : EngineRegistry.create(engineName, this.settings, cache);
+            created.add(newEngine);
+            return newEngine;
+        });
+        workers = new ThreadPoolExecutor(threads, threads, 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "batch-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Thread dispatcher = new Thread(this::dispatch, "batch-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * @param position Position to search, X is to move
+     * @return Future completed with the coordinates of the best move once
+     * the position's batch has been searched
+     */
+    public CompletableFuture<int[]> getBestMove(Position position) {
+        Request request = new Request(position);
+        synchronized (lock) {
+            if (!running) {
+                throw new IllegalStateException("Batcher shut down");
+            }
+            requests.increment();
+            pending.add(request);
+            if (pending.size() == 1 || pending.size() >= maxBatch) {
+                lock.notifyAll();
+            }
+        }
+        return request.move;
+    }
+
+    private void dispatch() {
+        while (true) {
+            List<Request> batch;
+            synchronized (lock) {
+                try {
+                    while (pending.isEmpty() && running) {
+                        lock.wait();
+                    }
+                    if (!running) {
+                        return;
+                    }
+                    long flushAt = pending.get(0).arrivedNanos + windowNanos;
+                    long remaining = flushAt - System.nanoTime();
+                    while (running && pending.size() < maxBatch
+                            && remaining > 0) {
+                        lock.wait(remaining / 1_000_000,
+                                (int) (remaining % 1_000_000));
+                        remaining = flushAt - System.nanoTime();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+            searchBatch(batch);
+        }
+    }
+
+    private void searchBatch(List<Request> batch) {
+        batches.increment();
+        long now = System.nanoTime();
+        Map<Position, List<Request>> distinct = new HashMap<>();
+        for (Request request : batch) {
+            long waited = now - request.arrivedNanos;
+            queueNanos.add(waited);
+            maxQueueNanos.accumulateAndGet(waited, Math::max);
+            distinct.computeIfAbsent(
+                    request.position.transform(request.transform),
+                    canonical -> new ArrayList<>()).add(request);
+        }
+        distinct.forEach((canonical, waiting) -> {
+            Search search = new Search(canonical, waiting);
+            try {
+                workers.execute(search);
+            } catch (RejectedExecutionException e) {
+                if (workers.isShutdown()) {
+                    // The batcher was shut down after the batch was taken.
+                    search.fail(new IllegalStateException("Batcher shut down"));
+                } else {
+                    rejected.add(waiting.size());
+                    search.fail(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The canonical position's move in the request's orientation
+     */
+    private static int[] untransform(Request request, int[] move) {
+        if (move[0] < 0) {
+            return move;
+        }
+        Position position = request.position;
+        int width = position.getWidth();
+        Symmetry symmetry = Symmetry.of(width, position.getHeight());
+        int tile = symmetry.transformTile(
+                symmetry.inverse(request.transform), move[0] * width + move[1]);
+        return new int[]{tile / width, tile % width};
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return Distinct positions searched, one for each group of requests
+     * for equivalent positions in a batch
+     */
+    public long getSearched() {
+        return searched.sum();
+    }
+
+    /**
+     * @return Requests failed because the queue of positions was full
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public double getMeanBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) requests.sum() / count;
+    }
+
+    /**
+     * @return Fraction of requests answered by another request's search
+     */
+    public double getDedupRatio() {
+        long count = requests.sum();
+        return count == 0 ? 0 : 1 - (double) searched.sum() / count;
+    }
+
+    /**
+     * @return Mean time requests waited for their batch to be dispatched
+     */
+    public double getMeanQueueMicros() {
+        long count = requests.sum();
+        return count == 0 ? 0 : queueNanos.sum() / 1e3 / count;
+    }
+
+    public double getMaxQueueMicros() {
+        return maxQueueNanos.get() / 1e3;
+    }
+
+    /**
+     * Stop collecting batches and the workers, the batcher cannot be used
+     * afterwards. Requests still waiting for a batch or for a worker fail.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+            for (Request request : pending) {
+                request.move.completeExceptionally(
+                        new IllegalStateException("Batcher shut down"));
+            }
+            pending.clear();
+        }
+        for (Runnable queued : workers.shutdownNow()) {
+            ((Search) queued).fail(
+                    new IllegalStateException("Batcher shut down"));
+        }
+        synchronized (created) {
+            for (SearchEngine engine : created) {
+                engine.shutdown();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests=%d batches=%d searched=%d "
+                + "rejected=%d mean-batch=%.1f dedup=%.3f mean-queue-us=%.0f "
+                + "max-queue-us=%.0f", getRequests(), getBatches(),
+                getSearched(), getRejected(), getMeanBatchSize(),
+                getDedupRatio(), getMeanQueueMicros(), getMaxQueueMicros());
+    }
+}
@@ -0,0 +1,220 @@
+package server;
+
+import ai.EngineRegistry;
+import ai.EngineSettings;
+import ai.MoveCache;
+import ai.SearchEngine;
+import game.Position;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the AI's moves for the game server on a fixed number of worker
+ * threads, each with its own engine of every name it has been asked for, as
+ * an engine must only be used by one thread at a time.
+ * <p>
+ * Requests wait in a bounded queue and are rejected once it is full, so an
+ * overloaded server answers quickly rather than building up work it cannot
+ * finish. Every request has a deadline: a request still queued when its
+ * deadline passes is never searched, and one still searching is stopped.
+ *
+ * @author DavidHurst
+ */
+public final class MoveService {
+
+    private final ThreadPoolExecutor workers;
+    private final EngineSettings settings;
+    private final MoveCache cache;
+    private final ThreadLocal<Map<String, SearchEngine>> engines
+            = ThreadLocal.withInitial(HashMap::new);
+    private final List<SearchEngine> created
+            = Collections.synchronizedList(new ArrayList<>());
+    private final LongAdder searched = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * One request, which can be stopped from the thread waiting for it. The
+     * engine is given the request's own stop condition rather than stopped
+     * with {@link SearchEngine#stop()}, which could miss a search not yet
+     * started or reach the next request searched by the same engine.
+     */
+    private final class Search implements Callable<int[]> {
+
+        private final Position position;
+        private final String engineName;
+        private final long deadlineNanos;
+        private volatile boolean cancelled;
+
+        Search(Position position, String engineName, long deadlineNanos) {
+            this.position = position;
+            this.engineName = engineName;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public int[] call() {
+            if (cancelled || System.nanoTime() - deadlineNanos > 0) {
+                throw new CancellationException("Deadline passed in queue");
+            }
+            SearchEngine engine = engines.get().computeIfAbsent(engineName,
+                    MoveService.this::newEngine);
+            int[] move;
+            try {
+                move = engine.search(position, this::isCancelled).getMove();
+            } catch (RuntimeException e) {
+                if (isCancelled()) {
+                    // Stopped before it found any move.
+                    throw new CancellationException("Deadline passed while"
+                            + " searching");
+                }
+                throw e;
+            }
+            searched.increment();
+            return move;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        private boolean isCancelled() {
+            return cancelled || System.nanoTime() - deadlineNanos > 0;
+        }
+    }
+
+    /**
+     * @param threads Number of searches to run at once
+     * @param queueCapacity Number of requests which can wait for a thread
+     * @param settings Settings of every engine created, their time budget
+     * should be well within the deadlines of the requests
+     */
+    public MoveService(int threads, int queueCapacity,
+            EngineSettings settings) {
+        this(threads, queueCapacity, settings, null);
+    }
+
+    /**
+     * @param threads Number of searches to run at once
+     * @param queueCapacity Number of requests which can wait for a thread
+     * @param settings Settings of every engine created, their time budget
+     * should be well within the deadlines of the requests
+     * @param cache Cache of moves the engines share, or null to always
+     * search
+     */
+    public MoveService(int threads, int queueCapacity,
+            EngineSettings settings, MoveCache cache) {
+        this.settings = settings;
+        this.cache = cache;
+        workers = new ThreadPoolExecutor(threads, threads, 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "move-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private SearchEngine newEngine(String name) {
+        SearchEngine engine = cache == null
+                ? EngineRegistry.create(name, settings)
+                : EngineRegistry.create(name, settings, cache);
+        created.add(engine);
+        return engine;
+    }
+
+    /**
+     * Find X's best move, blocking until it is found or the deadline passes.
+     * @param position Position to search, X is to move
+     * @param engine Name of the engine to search with
+     * @param deadlineNanos {@link System#nanoTime()} by which the move is
+     * needed
+     * @return Coordinates of the best move
+     * @throws RejectedExecutionException If the queue is full
+     * @throws TimeoutException If the deadline passed first
+     */
+    public int[] getBestMove(Position position, String engine,
+            long deadlineNanos) throws TimeoutException {
+        Search search = new Search(position, engine, deadlineNanos);
+        Future<int[]> result;
+        try {
+            result = workers.submit(search);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+        try {
+            return result.get(deadlineNanos - System.nanoTime(),
+                    TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            search.cancel();
+            result.cancel(false);
+            timedOut.increment();
+            throw e;
+        } catch (InterruptedException e) {
+            search.cancel();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a move",
+                    e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                timedOut.increment();
+                throw new TimeoutException(e.getCause().getMessage());
+            }
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+    }
+
+    public long getSearched() {
+        return searched.sum();
+    }
+
+    /**
+     * @return Requests turned away because the queue was full
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return Requests whose deadline passed before a move was found
+     */
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    public int getQueued() {
+        return workers.getQueue().size();
+    }
+
+    public int getActive() {
+        return workers.getActiveCount();
+    }
+
+    /**
+     * Stop the workers and their engines, the service cannot be used
+     * afterwards.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+        synchronized (created) {
+            for (SearchEngine engine : created) {
+                engine.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package server;
+
+import ai.EngineSettings;
+import game.Mark;
+import game.Position;
+import game.Symmetry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks moves searched once for a batch of equivalent positions are mapped
+ * back to correct moves in each position's own orientation.
+ *
+ * @author DavidHurst
+ */
+class MoveBatcherTest {
+
+    private final Map<Position, Integer> values = new HashMap<>();
+
+    @Test
+    void equivalentPositionsShareASearch() throws Exception {
+        MoveBatcher batcher = new MoveBatcher("MiniMaxCombined",
+                EngineSettings.DEFAULTS, 2, 1000, 200_000, 10_000);
+        try {
+            SplittableRandom random = new SplittableRandom(1);
+            List<Position> positions = new ArrayList<>();
+            Set<Position> canonical = new HashSet<>();
+            for (int i = 0; i < 40; i++) {
+                Position position = randomPosition(random);
+                canonical.add(position.transform(
+                        position.getCanonicalTransform()));
+                for (int t = 0; t < Symmetry.TRANSFORMS; t++) {
+                    positions.add(position.transform(t));
+                }
+            }
+            List<CompletableFuture<int[]>> moves = new ArrayList<>();
+            for (Position position : positions) {
+                moves.add(batcher.getBestMove(position));
+            }
+            for (int i = 0; i < positions.size(); i++) {
+                Position position = positions.get(i);
+                int[] move = moves.get(i).get(30, TimeUnit.SECONDS);
+                assertFalse(position.isTileMarked(move[0], move[1]),
+                        position::toString);
+                assertEquals(valueOf(position),
+                        -valueOf(position.withMove(move[0], move[1])),
+                        position::toString);
+            }
+            assertEquals(positions.size(), batcher.getRequests());
+            assertTrue(batcher.getSearched() < batcher.getRequests());
+            assertTrue(batcher.getSearched() >= canonical.size());
+        } finally {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    void shutdownCompletesEveryRequest() throws Exception {
+        MoveBatcher batcher = new MoveBatcher("MiniMaxCombined",
+                EngineSettings.DEFAULTS, 1, 1000, 0, 1);
+        SplittableRandom random = new SplittableRandom(2);
+        List<CompletableFuture<int[]>> moves = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            moves.add(batcher.getBestMove(randomPosition(random)));
+        }
+        batcher.shutdown();
+        for (CompletableFuture<int[]> move : moves) {
+            try {
+                move.get(30, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    void fullQueueFailsRequestsAtOnce() throws Exception {
+        MoveBatcher batcher = new MoveBatcher("MiniMaxCombined",
+                EngineSettings.DEFAULTS.withTimeBudget(300), 1, 1, 100_000,
+                10_000);
+        List<CompletableFuture<int[]>> moves = new ArrayList<>();
+        Position empty = Position.empty(4, 4, 4);
+        moves.add(batcher.getBestMove(empty));
+        for (int col = 0; col < 4; col++) {
+            moves.add(batcher.getBestMove(
+                    empty.withMove(0, col).withMove(3, 3 - col)));
+        }
+        int rejected = 0;
+        try {
+            for (CompletableFuture<int[]> move : moves) {
+                try {
+                    move.get(30, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertInstanceOf(RejectedExecutionException.class,
+                            e.getCause());
+                    rejected++;
+                }
+            }
+            assertTrue(rejected > 0);
+            assertEquals(rejected, batcher.getRejected());
+        } finally {
+            batcher.shutdown();
+        }
+        assertThrows(IllegalStateException.class,
+                () -> batcher.getBestMove(empty));
+        assertEquals(moves.size(), batcher.getRequests());
+    }
+
+    /**
+     * @return A 3x3 position reached by random moves where the game is not
+     * over and X is to move
+     */
+    private static Position randomPosition(SplittableRandom random) {
+        while (true) {
+            Position position = Position.empty(3, 3, 3);
+            int moves = 2 * random.nextInt(5);
+            for (int i = 0; i < moves && !position.isGameOver(); i++) {
+                int tile;
+                do {
+                    tile = random.nextInt(9);
+                } while (position.isTileMarked(tile / 3, tile % 3));
+                position = position.withMove(tile / 3, tile % 3);
+            }
+            if (!position.isGameOver() && position.getTurn() == Mark.X) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * @return 1 if the player to move wins with best play, 0 for a draw and
+     * -1 for a loss
+     */
+    private int valueOf(Position position) {
+        Integer known = values.get(position);
+        if (known != null) {
+            return known;
+        }
+        int value = position.getWinner() != Mark.BLANK ? -1 : 0;
+        if (!position.isGameOver()) {
+            value = -1;
+            for (int tile = 0; tile < 9; tile++) {
+                if (!position.isTileMarked(tile / 3, tile % 3)) {
+                    value = Math.max(value,
+                            -valueOf(position.withMove(tile / 3, tile % 3)));
+                }
+            }
+        }
+        values.put(position, value);
+        return value;
+    }
+}
@@ -0,0 +1,71 @@
+package server;
+
+import ai.EngineSettings;
+import game.Position;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks a request's deadline stops its own search and no other.
+ *
+ * @author DavidHurst
+ */
+class MoveServiceTest {
+
+    private static final EngineSettings LONG_SEARCHES = EngineSettings
+            .DEFAULTS.withTimeBudget(60_000).withMaxDepth(30);
+
+    @Test
+    void deadlineFreesTheWorker() throws Exception {
+        MoveService moves = new MoveService(1, 4, LONG_SEARCHES);
+        Position large = Position.empty(7, 7, 5).withMove(3, 3)
+                .withMove(3, 4);
+        try {
+            for (String engine : new String[]{"MiniMaxCombined",
+                "MiniMaxPvs", "MonteCarloTreeSearch"}) {
+                long start = System.nanoTime();
+                try {
+                    moves.getBestMove(large, engine,
+                            start + TimeUnit.MILLISECONDS.toNanos(300));
+                } catch (TimeoutException e) {
+                    // Expected unless the search stopped just in time.
+                }
+                // Monte Carlo searches always use their whole budget.
+                int[] move = moves.getBestMove(Position.empty(3, 3, 3),
+                        "MiniMaxCombined", System.nanoTime()
+                                + TimeUnit.SECONDS.toNanos(20));
+                assertNotNull(move);
+                assertTrue(System.nanoTime() - start
+                        < TimeUnit.SECONDS.toNanos(20), engine);
+            }
+        } finally {
+            moves.shutdown();
+        }
+    }
+
+    @Test
+    void timeoutsDoNotStopLaterRequests() throws Exception {
+        MoveService moves = new MoveService(1, 4, LONG_SEARCHES);
+        Position position = Position.empty(4, 4, 3).withMove(1, 1)
+                .withMove(2, 2);
+        try {
+            for (int i = 0; i < 50; i++) {
+                try {
+                    moves.getBestMove(position, "MiniMaxCombined",
+                            System.nanoTime() + (i % 5) * 100_000);
+                } catch (TimeoutException e) {
+                    // Most of these are too short to find a move.
+                }
+                assertNotNull(moves.getBestMove(Position.empty(3, 3, 3),
+                        "MiniMaxCombined", System.nanoTime()
+                                + TimeUnit.SECONDS.toNanos(20)));
+            }
+        } finally {
+            moves.shutdown();
+        }
+    }
+}